@@ -0,0 +1,360 @@
+package LanguageCompetitionDiffusion;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Adaptive parameter space exploration. Instead of a uniform grid, the space spanned
+ * by a few double parameters (by default statusX x volatility x mortalityRate) is
+ * split into boxes, and only the boxes where the outcome changes or is uncertain
+ * are refined, until the run budget is spent.
+ *
+ * The outcome of a point is the final share of X, Y and XY speakers over the
+ * replicas of its ensemble. A box is evaluated at its corners and its center. Its
+ * score is the largest difference of a mean share between these points (the local
+ * gradient) plus the largest 95% confidence half width of a mean share at these
+ * points (the uncertainty). Boxes are refined in order of decreasing score by
+ * splitting every axis in two, which reuses the points already evaluated. Box
+ * corners are integer indices on the finest grid the refinement can reach, so a
+ * point shared by neighboring boxes is always the same point.
+ *
+ * Points are run in parallel and through the result cache by a SweepRunner.
+ */
+public class AdaptiveSweep {
+
+	/**
+	 * Default exploration axes.
+	 */
+	public static final String[] DEFAULT_AXES = { "statusX", "volatility", "mortalityRate" };
+
+	private final ModelConfiguration base;
+	private final String[] axes;
+	private final double[] lower;
+	private final double[] upper;
+	private final SweepRunner runner;
+	private final int runBudget;
+	private final int maxDepth;
+	private final double threshold;
+	private final Map<String, Point> points = new LinkedHashMap<String, Point>();
+	// number of steps per axis of the finest grid, box centers at maxDepth included
+	private int resolution;
+	private int runsUsed;
+
+	/**
+	 * @param base Configuration of all parameters which are not explored
+	 * @param axes Names of the explored double parameters
+	 * @param lower Lower bound of every axis
+	 * @param upper Upper bound of every axis
+	 * @param runner Runner used to evaluate the points
+	 * @param runBudget Maximum number of simulated replicas, cached points are free
+	 * @param maxDepth Maximum number of refinements of an initial box
+	 * @param threshold Boxes with a score below the threshold are not refined
+	 */
+	public AdaptiveSweep(ModelConfiguration base, String[] axes, double[] lower, double[] upper,
+			SweepRunner runner, int runBudget, int maxDepth, double threshold) {
+		if (axes.length == 0 || axes.length != lower.length || axes.length != upper.length) {
+			throw new IllegalArgumentException("Every axis needs a lower and an upper bound.");
+		}
+		if (maxDepth < 0 || maxDepth > 20) {
+			throw new IllegalArgumentException("Maximum depth must be between 0 and 20.");
+		}
+		for (int a = 0; a < axes.length; a++) {
+			if (!(base.getValue(axes[a]) instanceof Double) || !(lower[a] < upper[a])) {
+				throw new IllegalArgumentException("Invalid axis: " + axes[a]);
+			}
+		}
+		this.base = base;
+		this.axes = axes.clone();
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+		this.runner = runner;
+		this.runBudget = runBudget;
+		this.maxDepth = maxDepth;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Evaluates a coarse grid of initialDivisions boxes per axis, then refines.
+	 *
+	 * @param initialDivisions Number of initial boxes per axis
+	 * @return all evaluated points
+	 */
+	public Collection<Point> run(int initialDivisions) {
+		PriorityQueue<Box> queue = new PriorityQueue<Box>();
+		List<Box> boxes = new ArrayList<Box>();
+		// one extra halving so that the centers of the deepest boxes are grid points
+		int step = 1 << (maxDepth + 1);
+		resolution = initialDivisions * step;
+		int count = (int) Math.pow(initialDivisions, axes.length);
+		for (int i = 0; i < count; i++) {
+			int[] lo = new int[axes.length];
+			int[] hi = new int[axes.length];
+			for (int a = 0, rest = i; a < axes.length; a++, rest /= initialDivisions) {
+				lo[a] = (rest % initialDivisions) * step;
+				hi[a] = lo[a] + step;
+			}
+			boxes.add(new Box(lo, hi, 0));
+		}
+		if (!evaluate(boxes)) {
+			return points.values();
+		}
+		queue.addAll(boxes);
+
+		while (!queue.isEmpty()) {
+			Box box = queue.poll();
+			if (box.score < threshold) {
+				break;
+			}
+			if (box.depth >= maxDepth) {
+				continue;
+			}
+			List<Box> children = box.split();
+			if (!evaluate(children)) {
+				break;
+			}
+			queue.addAll(children);
+		}
+		return points.values();
+	}
+
+	/**
+	 * Runs the missing points of the boxes and scores them.
+	 *
+	 * @return false if the budget does not allow simulating the missing points which are not cached
+	 */
+	private boolean evaluate(List<Box> boxes) {
+		Map<String, int[]> missing = new LinkedHashMap<String, int[]>();
+		for (Box box : boxes) {
+			for (int[] indices : box.samples()) {
+				String key = key(indices);
+				if (!points.containsKey(key)) {
+					missing.put(key, indices);
+				}
+			}
+		}
+
+		List<ModelConfiguration> configurations = new ArrayList<ModelConfiguration>();
+		int uncached = 0;
+		for (int[] indices : missing.values()) {
+			ModelConfiguration config = base;
+			for (int a = 0; a < axes.length; a++) {
+				config = config.with(axes[a], coordinate(a, indices[a]));
+			}
+			configurations.add(config);
+			if (!runner.isCached(config)) {
+				uncached++;
+			}
+		}
+		if (runsUsed + uncached * runner.getReplicas() > runBudget) {
+			return false;
+		}
+
+		int runsBefore = runner.getRuns();
+		List<RunResult[]> results = runner.run(configurations);
+		runsUsed += (runner.getRuns() - runsBefore) * runner.getReplicas();
+
+		int i = 0;
+		for (Map.Entry<String, int[]> entry : missing.entrySet()) {
+			double[] coordinates = new double[axes.length];
+			for (int a = 0; a < axes.length; a++) {
+				coordinates[a] = coordinate(a, entry.getValue()[a]);
+			}
+			points.put(entry.getKey(), new Point(coordinates, results.get(i++)));
+		}
+		for (Box box : boxes) {
+			box.score();
+		}
+		return true;
+	}
+
+	/**
+	 * @return value of a grid index on an axis
+	 */
+	private double coordinate(int axis, int index) {
+		if (index == resolution) {
+			return upper[axis];
+		}
+		return lower[axis] + (upper[axis] - lower[axis]) * index / resolution;
+	}
+
+	private static String key(int[] indices) {
+		StringBuilder key = new StringBuilder();
+		for (int index : indices) {
+			key.append(index).append(';');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return number of simulated replicas so far
+	 */
+	public int getRunsUsed() {
+		return runsUsed;
+	}
+
+	public String[] getAxes() {
+		return axes.clone();
+	}
+
+	/**
+	 * An evaluated parameter point: mean final share of X, Y and XY speakers over
+	 * the replicas and the 95% confidence half width of each mean.
+	 */
+	public static class Point {
+
+		private final double[] coordinates;
+		private final double[] means = new double[3];
+		private final double[] confidences = new double[3];
+
+		Point(double[] coordinates, RunResult[] results) {
+			this.coordinates = coordinates;
+			EnsembleSummary summary = new EnsembleSummary(results);
+			int last = summary.getTicks() - 1;
+			int cells = results[0].getFinalLanguages().length;
+			for (int s = RunResult.SPEAKERS_X; s <= RunResult.SPEAKERS_XY; s++) {
+				means[s] = summary.getMean(s, last) / cells;
+				confidences[s] = summary.getConfidence(s, last) / cells;
+			}
+		}
+
+		public double getCoordinate(int axis) {
+			return coordinates[axis];
+		}
+
+		/**
+		 * @param seriesId RunResult.SPEAKERS_X, SPEAKERS_Y or SPEAKERS_XY
+		 * @return mean final share of speakers
+		 */
+		public double getMeanShare(int seriesId) {
+			return means[seriesId];
+		}
+
+		public double getConfidence(int seriesId) {
+			return confidences[seriesId];
+		}
+	}
+
+	/**
+	 * A box of parameter space in grid indices, refined by halving every axis.
+	 */
+	private class Box implements Comparable<Box> {
+
+		private final int[] lo;
+		private final int[] hi;
+		private final int depth;
+		private double score;
+
+		Box(int[] lo, int[] hi, int depth) {
+			this.lo = lo;
+			this.hi = hi;
+			this.depth = depth;
+		}
+
+		/**
+		 * @return the corners and the center of the box
+		 */
+		List<int[]> samples() {
+			List<int[]> samples = new ArrayList<int[]>();
+			for (int corner = 0; corner < (1 << lo.length); corner++) {
+				int[] indices = new int[lo.length];
+				for (int a = 0; a < lo.length; a++) {
+					indices[a] = ((corner >> a) & 1) == 0 ? lo[a] : hi[a];
+				}
+				samples.add(indices);
+			}
+			int[] center = new int[lo.length];
+			for (int a = 0; a < lo.length; a++) {
+				center[a] = (lo[a] + hi[a]) / 2;
+			}
+			samples.add(center);
+			return samples;
+		}
+
+		void score() {
+			double change = 0;
+			double uncertainty = 0;
+			for (int s = RunResult.SPEAKERS_X; s <= RunResult.SPEAKERS_XY; s++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int[] indices : samples()) {
+					Point point = points.get(key(indices));
+					min = Math.min(min, point.getMeanShare(s));
+					max = Math.max(max, point.getMeanShare(s));
+					uncertainty = Math.max(uncertainty, point.getConfidence(s));
+				}
+				change = Math.max(change, max - min);
+			}
+			score = change + uncertainty;
+		}
+
+		List<Box> split() {
+			List<Box> children = new ArrayList<Box>();
+			for (int child = 0; child < (1 << lo.length); child++) {
+				int[] childLo = new int[lo.length];
+				int[] childHi = new int[lo.length];
+				for (int a = 0; a < lo.length; a++) {
+					int middle = (lo[a] + hi[a]) / 2;
+					childLo[a] = ((child >> a) & 1) == 0 ? lo[a] : middle;
+					childHi[a] = ((child >> a) & 1) == 0 ? middle : hi[a];
+				}
+				children.add(new Box(childLo, childHi, depth + 1));
+			}
+			return children;
+		}
+
+		public int compareTo(Box other) {
+			return Double.compare(other.score, score);
+		}
+	}
+
+	/**
+	 * Command line entry point: budget replicas ticks [name=value ...]. Explores the
+	 * default axes over statusX 0.05-0.95, volatility 0.5-2.0 and mortalityRate 1-50,
+	 * caches results in the lcd-cache directory and prints every evaluated point.
+	 *
+	 * @param args Arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: AdaptiveSweep budget replicas ticks [name=value ...]");
+			System.exit(1);
+		}
+		ModelConfiguration config = ModelConfiguration.defaults().with("randomSeed", 1);
+		for (int i = 3; i < args.length; i++) {
+			String[] pair = args[i].split("=", 2);
+			config = config.withParsed(pair[0], pair[1]);
+		}
+		int budget = Integer.parseInt(args[0]);
+		SweepRunner runner = new SweepRunner(
+				new RunResultCache(new File("lcd-cache"), 1L << 30),
+				Integer.parseInt(args[1]),
+				Integer.parseInt(args[2]),
+				Runtime.getRuntime().availableProcessors());
+		AdaptiveSweep sweep = new AdaptiveSweep(config, DEFAULT_AXES,
+				new double[] { 0.05, 0.5, 1.0 }, new double[] { 0.95, 2.0, 50.0 },
+				runner, budget, 6, 0.05);
+
+		Collection<Point> results = sweep.run(2);
+		System.out.println("statusX,volatility,mortalityRate,shareX,shareX_ci95,shareY,shareY_ci95,shareXY,shareXY_ci95");
+		for (Point point : results) {
+			StringBuilder line = new StringBuilder();
+			for (int a = 0; a < DEFAULT_AXES.length; a++) {
+				line.append(String.format(Locale.ROOT, "%.6f,", point.getCoordinate(a)));
+			}
+			for (int s = RunResult.SPEAKERS_X; s <= RunResult.SPEAKERS_XY; s++) {
+				line.append(String.format(Locale.ROOT, "%.6f,%.6f", point.getMeanShare(s), point.getConfidence(s)));
+				line.append(s < RunResult.SPEAKERS_XY ? "," : "");
+			}
+			System.out.println(line);
+		}
+		System.err.println(results.size() + " points, " + sweep.getRunsUsed() + " replicas simulated, "
+				+ runner.getCacheHits() + " points from cache");
+	}
+
+}
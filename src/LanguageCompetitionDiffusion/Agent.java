@@ -1,6 +1,7 @@
 package LanguageCompetitionDiffusion;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import LanguageCompetitionDiffusion.Transmission;
 import LanguageCompetitionDiffusion.Feature;
@@ -40,6 +41,8 @@ public class Agent {
 	public double similarityIndex;
 	public int numFeatures;
 	public ArrayList<Feature> features;
+	private int cellIndex = -1;
+	private List<CellChangeListener> changeListeners;
 
 	/**
 	 * The agent is randomly a type from 1 to numberOfAgentTypes. 
@@ -339,10 +342,12 @@ public class Agent {
 			}
 		}
 		
+		boolean traitCopied = false;
 		if (activeFeatures.size() > 0) {
 			int roulette = RandomHelper.nextIntFromTo(1, activeFeatures.size()); 
 			int selectedFeatureId = activeFeatures.get(roulette - 1);
 			this.features.set(selectedFeatureId, neighborFeatures.get(selectedFeatureId));
+			traitCopied = true;
 		}
 		
 		// calculate neighborhood similarity
@@ -358,10 +363,28 @@ public class Agent {
 			}
 		}
 		
+		double oldSimilarityIndex = this.similarityIndex;
 		this.similarityIndex = (double) similarityIndexCounter / ((double) this.numFeatures * 8);
 		final NeighborhoodCell cell = getNeighborhoodCell();
 		cell.setSimilarityIndex(this.similarityIndex);
 		
+		// report what changed to the analytics components
+		int changes = 0;
+		if (this.getOldType() != this.getType()) {
+			changes |= CellChangeListener.LANGUAGE;
+		}
+		if (traitCopied) {
+			changes |= CellChangeListener.TRAITS;
+		}
+		if (oldSimilarityIndex != this.similarityIndex) {
+			changes |= CellChangeListener.SIMILARITY;
+		}
+		if (changes != 0 && changeListeners != null) {
+			for (CellChangeListener listener : changeListeners) {
+				listener.cellChanged(cellIndex, this, changes);
+			}
+		}
+		
 		speakersX = this.getSpeakersX();
 		speakersY = this.getSpeakersY();
 		speakersXY = this.getSpeakersXY();
@@ -492,6 +515,36 @@ public class Agent {
 		return this.similarityIndex;
 	}
 
+	/**
+	 * Returns TRUE if the agent interacted with a neighbor, calling imitate(), in its last step
+	 * 
+	 * @return imitated
+	 */
+	public boolean isImitated() {
+		return this.imitated;
+	}
+
+	/**
+	 * Registers the listeners notified when imitate() changes the agent. The list is
+	 * shared by all agents of the model.
+	 * 
+	 * @param changeListeners Listeners
+	 * @param cellIndex Index of the agent's cell, y * width + x
+	 */
+	public void setChangeListeners(List<CellChangeListener> changeListeners, int cellIndex) {
+		this.changeListeners = changeListeners;
+		this.cellIndex = cellIndex;
+	}
+	
+	/**
+	 * Returns the index of the agent's cell, y * width + x, or -1 if not known.
+	 * 
+	 * @return cellIndex
+	 */
+	public int getCellIndex() {
+		return cellIndex;
+	}
+
 	public int getOldType() {
 		return oldType;
 	}
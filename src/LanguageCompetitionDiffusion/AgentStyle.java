@@ -13,6 +13,8 @@ import repast.simphony.visualization.visualization3D.style.TaggedBranchGroup;
 
 public class AgentStyle implements Style3D<Agent> {
 
+	private SnapshotRenderer renderer = null;
+
 	public TaggedBranchGroup getBranchGroup(Agent agent, TaggedBranchGroup taggedGroup) {
 
 		if (taggedGroup == null || taggedGroup.getTag() == null) {
@@ -51,17 +53,26 @@ public class AgentStyle implements Style3D<Agent> {
 	}
 
 	public TaggedAppearance getAppearance(Agent agent, TaggedAppearance taggedAppearance, Object shapeID) {
+		// language of the last rendered frame, the live agent only until the first frame
+		if (renderer == null) {
+			renderer = SnapshotRenderer.find();
+		}
+		final SnapshotRenderer.Frame frame = (renderer != null) ? renderer.getFrame() : null;
+		final int language = (frame != null) ? frame.getSnapshot().getLanguage(agent.getCellIndex()) : agent.getType();
+		final String tag = RenderPalette.languageTag(language);
 		if (taggedAppearance == null) {
 			taggedAppearance = new TaggedAppearance();
 		}
+		else if (tag.equals(taggedAppearance.getTag())) {
+			// language unchanged since the last frame, keep the current material
+			return taggedAppearance;
+		}
 
-		if (agent.getType() == 1)
-		  AppearanceFactory.setMaterialAppearance(taggedAppearance.getAppearance(), Color.red);
-		else if (agent.getType() == 2)
-		  AppearanceFactory.setMaterialAppearance(taggedAppearance.getAppearance(), Color.blue);
-		else if (agent.getType() == 3)
-		  AppearanceFactory.setMaterialAppearance(taggedAppearance.getAppearance(), Color.green);
-		
+		final Color color = RenderPalette.languageColor(language);
+		if (color != null) {
+			AppearanceFactory.setMaterialAppearance(taggedAppearance.getAppearance(), color);
+			taggedAppearance.setTag(tag);
+		}
 		
 		return taggedAppearance;
 	}
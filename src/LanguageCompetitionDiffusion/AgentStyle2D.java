@@ -6,16 +6,22 @@ import repast.simphony.visualizationOGL2D.DefaultStyleOGL2D;
 
 public class AgentStyle2D extends DefaultStyleOGL2D {
 	
+	private SnapshotRenderer renderer = null;
+	
 	@Override
 	public Color getColor(Object o) {
 		Agent agent = (Agent)o;
-		if (agent.getType() == 1)	
-			return Color.RED;
-		else if ((agent.getType() == 2))
-			return Color.BLUE;
-		else if ((agent.getType() == 3))
-			return Color.GREEN;
-		return null;
+		// draw the language of the last rendered frame, not the live agent
+		if (renderer == null) {
+			renderer = SnapshotRenderer.find();
+		}
+		if (renderer != null) {
+			final SnapshotRenderer.Frame frame = renderer.getFrame();
+			if (frame != null) {
+				return frame.getLanguageColor(agent.getCellIndex());
+			}
+		}
+		return RenderPalette.languageColor(agent.getType());
 	}
 	
 	@Override
@@ -0,0 +1,31 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Notified by an agent after imitate() has changed its language, its cultural
+ * traits or its neighborhood similarity index.
+ */
+public interface CellChangeListener {
+
+	/**
+	 * The language (feature 0) changed.
+	 */
+	int LANGUAGE = 1;
+
+	/**
+	 * One of the other cultural features changed.
+	 */
+	int TRAITS = 2;
+
+	/**
+	 * The neighborhood similarity index changed.
+	 */
+	int SIMILARITY = 4;
+
+	/**
+	 * @param cell Index of the agent's cell, y * width + x
+	 * @param agent The agent which changed
+	 * @param changes Combination of LANGUAGE, TRAITS and SIMILARITY
+	 */
+	void cellChanged(int cell, Agent agent, int changes);
+
+}
@@ -0,0 +1,348 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import repast.simphony.engine.environment.RunEnvironment;
+import repast.simphony.engine.schedule.ScheduleParameters;
+import repast.simphony.engine.schedule.ScheduledMethod;
+
+/**
+ * Publishes, every tick, only the cells whose language, traits or similarity index
+ * were changed by Agent.imitate(), as a DeltaBatch. Several changes of the same cell
+ * within a tick are coalesced into one entry holding the state at the end of the tick.
+ *
+ * The subscription API follows the reactive streams contract (Publisher, Subscriber,
+ * Subscription with request(n) and cancel()), declared here because the Repast
+ * runtime predates java.util.concurrent.Flow. Every subscriber gets its own delivery
+ * thread, so a slow consumer (a socket with a slow peer) only holds back itself, and
+ * batches are delivered only as far as it has requested them. Every subscription has
+ * a bounded buffer: a subscriber which falls behind loses its buffered batches and
+ * receives a keyframe with the full state instead, so the simulation thread never
+ * waits for a consumer. A new subscriber starts with a keyframe as well.
+ */
+public class ChangeFeed implements CellChangeListener {
+
+	/**
+	 * Receives the batches of a subscription, in order and never concurrently.
+	 */
+	public interface Subscriber {
+
+		void onSubscribe(Subscription subscription);
+
+		void onNext(DeltaBatch batch);
+
+		void onError(Throwable error);
+
+		void onComplete();
+	}
+
+	/**
+	 * Link between the feed and one subscriber.
+	 */
+	public interface Subscription {
+
+		/**
+		 * Allows the delivery of n more batches.
+		 *
+		 * @param n Number of batches, must be positive
+		 */
+		void request(long n);
+
+		/**
+		 * Stops the delivery, buffered batches are discarded.
+		 */
+		void cancel();
+	}
+
+	private final Agent[] agents;
+	private final NeighborhoodCell[] cells;
+	private final int numFeatures;
+	private final int bufferSize;
+	private final int[] dirtyMasks;
+	private final int[] dirtyCells;
+	private int dirtyCount;
+	private final List<FeedSubscription> subscriptions = new CopyOnWriteArrayList<FeedSubscription>();
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+
+	/**
+	 * @param agents Agents indexed by cell (y * width + x), null for empty cells
+	 * @param cells Neighborhood cells indexed by cell
+	 * @param numFeatures Number of cultural features
+	 * @param bufferSize Number of batches buffered per subscriber before it is resynchronized
+	 */
+	public ChangeFeed(Agent[] agents, NeighborhoodCell[] cells, int numFeatures, int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive.");
+		}
+		this.agents = agents;
+		this.cells = cells;
+		this.numFeatures = numFeatures;
+		this.bufferSize = bufferSize;
+		this.dirtyMasks = new int[agents.length];
+		this.dirtyCells = new int[agents.length];
+		RunEnvironment.getInstance().getCurrentSchedule().schedule(
+				ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY), this, "complete");
+	}
+
+	public void cellChanged(int cell, Agent agent, int changes) {
+		if (dirtyMasks[cell] == 0) {
+			dirtyCells[dirtyCount++] = cell;
+		}
+		dirtyMasks[cell] |= changes;
+	}
+
+	/**
+	 * Subscribes to the feed, the first batch delivered is a keyframe.
+	 *
+	 * @param subscriber Subscriber
+	 */
+	public void subscribe(final Subscriber subscriber) {
+		final FeedSubscription subscription = new FeedSubscription(subscriber);
+		subscriptions.add(subscription);
+		subscription.deliver(new Runnable() {
+			public void run() {
+				subscriber.onSubscribe(subscription);
+			}
+		});
+	}
+
+	/**
+	 * Runs after the agents have been updated, hands this tick's batch to the subscribers.
+	 */
+	@ScheduledMethod(start = 0, interval = 1, priority = -2)
+	public void publish() {
+		if (!subscriptions.isEmpty()) {
+			double tick = RunEnvironment.getInstance().getCurrentSchedule().getTickCount();
+			DeltaBatch delta = null;
+			DeltaBatch keyframe = null;
+			for (FeedSubscription subscription : subscriptions) {
+				if (subscription.needsKeyframe()) {
+					if (keyframe == null) {
+						keyframe = keyframe(tick);
+					}
+					subscription.offer(keyframe);
+				}
+				else {
+					if (delta == null) {
+						delta = delta(tick);
+					}
+					subscription.offer(delta);
+				}
+			}
+		}
+		for (int i = 0; i < dirtyCount; i++) {
+			dirtyMasks[dirtyCells[i]] = 0;
+		}
+		dirtyCount = 0;
+	}
+
+	/**
+	 * Completes all subscriptions at the end of the run.
+	 */
+	public void complete() {
+		for (final FeedSubscription subscription : subscriptions) {
+			subscription.deliver(new Runnable() {
+				public void run() {
+					subscription.complete();
+				}
+			});
+			subscription.delivery.shutdown();
+		}
+	}
+
+	private DeltaBatch delta(double tick) {
+		int[] cellIds = new int[dirtyCount];
+		int[] changes = new int[dirtyCount];
+		int[] languages = new int[dirtyCount];
+		double[] similarities = new double[dirtyCount];
+		int[][] traits = new int[dirtyCount][];
+		for (int i = 0; i < dirtyCount; i++) {
+			int cell = dirtyCells[i];
+			cellIds[i] = cell;
+			changes[i] = dirtyMasks[cell];
+			fill(i, cell, (changes[i] & TRAITS) != 0, languages, similarities, traits);
+		}
+		return new DeltaBatch(tick, false, numFeatures, cellIds, changes, languages, similarities, traits);
+	}
+
+	private DeltaBatch keyframe(double tick) {
+		int occupied = 0;
+		for (Agent agent : agents) {
+			if (agent != null) {
+				occupied++;
+			}
+		}
+		int[] cellIds = new int[occupied];
+		int[] changes = new int[occupied];
+		int[] languages = new int[occupied];
+		double[] similarities = new double[occupied];
+		int[][] traits = new int[occupied][];
+		for (int cell = 0, i = 0; cell < agents.length; cell++) {
+			if (agents[cell] != null) {
+				cellIds[i] = cell;
+				changes[i] = LANGUAGE | TRAITS | SIMILARITY;
+				fill(i, cell, true, languages, similarities, traits);
+				i++;
+			}
+		}
+		return new DeltaBatch(tick, true, numFeatures, cellIds, changes, languages, similarities, traits);
+	}
+
+	private void fill(int entry, int cell, boolean withTraits, int[] languages, double[] similarities, int[][] traits) {
+		Agent agent = agents[cell];
+		languages[entry] = agent.getType();
+		similarities[entry] = cells[cell].getSimilarityIndex();
+		if (withTraits) {
+			traits[entry] = new int[numFeatures];
+			for (int f = 0; f < numFeatures; f++) {
+				traits[entry][f] = agent.features.get(f).getValue();
+			}
+		}
+	}
+
+	/**
+	 * Bounded buffer, demand and delivery thread of one subscriber. Queue and demand are
+	 * guarded by the subscription, subscriber callbacks only run on its delivery thread.
+	 */
+	private class FeedSubscription implements Subscription {
+
+		private final Subscriber subscriber;
+		private final ExecutorService delivery;
+		private final ArrayDeque<DeltaBatch> queue = new ArrayDeque<DeltaBatch>();
+		private long demand;
+		private boolean keyframeNeeded = true;
+		private boolean cancelled;
+		private boolean draining;
+
+		FeedSubscription(Subscriber subscriber) {
+			this.subscriber = subscriber;
+			final String name = "ChangeFeed-" + subscriberCount.incrementAndGet();
+			this.delivery = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, name);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		synchronized boolean needsKeyframe() {
+			return keyframeNeeded;
+		}
+
+		void offer(DeltaBatch batch) {
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+				if (queue.size() >= bufferSize) {
+					// too slow, drop the backlog and resynchronize with the next keyframe
+					queue.clear();
+					keyframeNeeded = true;
+					return;
+				}
+				queue.add(batch);
+				if (batch.isKeyframe()) {
+					keyframeNeeded = false;
+				}
+			}
+			scheduleDrain();
+		}
+
+		public void request(final long n) {
+			if (n <= 0) {
+				// queued before cancel() shuts the delivery thread down
+				deliver(new Runnable() {
+					public void run() {
+						subscriber.onError(new IllegalArgumentException("Requested " + n + " batches."));
+					}
+				});
+				cancel();
+				return;
+			}
+			synchronized (this) {
+				demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+			}
+			scheduleDrain();
+		}
+
+		public void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				queue.clear();
+			}
+			subscriptions.remove(this);
+			// tasks already queued still run, then the thread ends
+			delivery.shutdown();
+		}
+
+		void complete() {
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+			}
+			drain();
+			subscriber.onComplete();
+		}
+
+		private void scheduleDrain() {
+			synchronized (this) {
+				if (draining || cancelled || demand == 0 || queue.isEmpty()) {
+					return;
+				}
+				draining = true;
+			}
+			deliver(new Runnable() {
+				public void run() {
+					drain();
+				}
+			});
+		}
+
+		/**
+		 * Runs a task on the delivery thread, unless the subscription has been cancelled
+		 * or completed in the meantime.
+		 */
+		void deliver(Runnable task) {
+			try {
+				delivery.execute(task);
+			}
+			catch (RejectedExecutionException e) {
+				// delivery thread shut down, nothing more is delivered
+			}
+		}
+
+		private void drain() {
+			while (true) {
+				DeltaBatch batch;
+				synchronized (this) {
+					if (cancelled || demand == 0 || queue.isEmpty()) {
+						draining = false;
+						return;
+					}
+					batch = queue.poll();
+					if (demand != Long.MAX_VALUE) {
+						demand--;
+					}
+				}
+				try {
+					subscriber.onNext(batch);
+				}
+				catch (RuntimeException e) {
+					cancel();
+					subscriber.onError(e);
+					return;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package LanguageCompetitionDiffusion;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import repast.simphony.engine.environment.RunEnvironment;
+import repast.simphony.engine.schedule.ScheduleParameters;
+
+/**
+ * Local socket transport of a ChangeFeed. Listens on the loopback interface and
+ * subscribes every client that connects with a DeltaStreamSubscriber, so external
+ * dashboards can follow the grid live.
+ */
+public class ChangeFeedServer implements Runnable {
+
+	private final ChangeFeed feed;
+	private final ServerSocket serverSocket;
+
+	/**
+	 * @param feed Change feed
+	 * @param port Local port
+	 * @throws IOException if the port cannot be opened
+	 */
+	public ChangeFeedServer(ChangeFeed feed, int port) throws IOException {
+		this.feed = feed;
+		this.serverSocket = new ServerSocket(port, 10, InetAddress.getLoopbackAddress());
+		Thread thread = new Thread(this, "ChangeFeedServer");
+		thread.setDaemon(true);
+		thread.start();
+		RunEnvironment.getInstance().getCurrentSchedule().schedule(
+				ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY), this, "close");
+	}
+
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket client = serverSocket.accept();
+				client.setTcpNoDelay(true);
+				feed.subscribe(new DeltaStreamSubscriber(client.getOutputStream()));
+			}
+			catch (IOException e) {
+				// server socket closed at the end of the run
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting clients, connected clients are completed by the feed.
+	 */
+	public void close() {
+		try {
+			serverSocket.close();
+		}
+		catch (IOException e) {
+			// nothing left to release
+		}
+	}
+
+}
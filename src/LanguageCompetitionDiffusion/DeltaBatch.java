@@ -0,0 +1,85 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * The cells which changed during one tick, published by ChangeFeed. Entries are
+ * stored in columns; entry i describes cell getCell(i), the kinds of change in
+ * getChanges(i) (CellChangeListener flags) and the state of the cell at the end of
+ * the tick. Feature values are only included for entries with the TRAITS flag.
+ *
+ * A keyframe batch holds every occupied cell with all flags set, consumers replace
+ * their whole state with it.
+ */
+public class DeltaBatch {
+
+	private final double tick;
+	private final boolean keyframe;
+	private final int numFeatures;
+	private final int[] cells;
+	private final int[] changes;
+	private final int[] languages;
+	private final double[] similarities;
+	private final int[][] traits;
+
+	/**
+	 * The arrays are taken over by the batch and must not be modified afterwards.
+	 */
+	public DeltaBatch(double tick, boolean keyframe, int numFeatures, int[] cells, int[] changes,
+			int[] languages, double[] similarities, int[][] traits) {
+		this.tick = tick;
+		this.keyframe = keyframe;
+		this.numFeatures = numFeatures;
+		this.cells = cells;
+		this.changes = changes;
+		this.languages = languages;
+		this.similarities = similarities;
+		this.traits = traits;
+	}
+
+	public double getTick() {
+		return tick;
+	}
+
+	/**
+	 * @return true if the batch holds the full state instead of the changes of one tick
+	 */
+	public boolean isKeyframe() {
+		return keyframe;
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return cells.length;
+	}
+
+	public int getCell(int entry) {
+		return cells[entry];
+	}
+
+	public int getChanges(int entry) {
+		return changes[entry];
+	}
+
+	public int getLanguage(int entry) {
+		return languages[entry];
+	}
+
+	public double getSimilarity(int entry) {
+		return similarities[entry];
+	}
+
+	/**
+	 * @param entry Entry
+	 * @param feature Feature, 0 is the language
+	 * @return feature value, only defined for entries with the TRAITS flag
+	 */
+	public int getTrait(int entry, int feature) {
+		return traits[entry][feature];
+	}
+
+}
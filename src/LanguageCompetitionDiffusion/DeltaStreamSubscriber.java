@@ -0,0 +1,91 @@
+package LanguageCompetitionDiffusion;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the batches of a ChangeFeed to a stream (file or socket), requesting the
+ * next batch only once the previous one has been written.
+ *
+ * Binary format, big endian, one record per batch: tick (double), keyframe (boolean),
+ * number of features (int), number of entries (int), then per entry: cell (int),
+ * change flags (byte), language (byte), similarity index (double) and, if the TRAITS
+ * flag is set, the value of every feature (int).
+ */
+public class DeltaStreamSubscriber implements ChangeFeed.Subscriber {
+
+	private final DataOutputStream out;
+	private ChangeFeed.Subscription subscription;
+
+	public DeltaStreamSubscriber(OutputStream stream) {
+		this.out = new DataOutputStream(new BufferedOutputStream(stream));
+	}
+
+	/**
+	 * Writes the batches to a file, creating its directory if needed.
+	 *
+	 * @param file Output file
+	 * @throws IOException if the file cannot be created
+	 */
+	public DeltaStreamSubscriber(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+	}
+
+	public void onSubscribe(ChangeFeed.Subscription subscription) {
+		this.subscription = subscription;
+		subscription.request(1);
+	}
+
+	public void onNext(DeltaBatch batch) {
+		try {
+			out.writeDouble(batch.getTick());
+			out.writeBoolean(batch.isKeyframe());
+			out.writeInt(batch.getNumFeatures());
+			out.writeInt(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				out.writeInt(batch.getCell(i));
+				out.writeByte(batch.getChanges(i));
+				out.writeByte(batch.getLanguage(i));
+				out.writeDouble(batch.getSimilarity(i));
+				if ((batch.getChanges(i) & CellChangeListener.TRAITS) != 0) {
+					for (int f = 0; f < batch.getNumFeatures(); f++) {
+						out.writeInt(batch.getTrait(i, f));
+					}
+				}
+			}
+			out.flush();
+			subscription.request(1);
+		}
+		catch (IOException e) {
+			// consumer went away
+			subscription.cancel();
+			close();
+		}
+	}
+
+	public void onError(Throwable error) {
+		close();
+	}
+
+	public void onComplete() {
+		close();
+	}
+
+	private void close() {
+		try {
+			out.close();
+		}
+		catch (IOException e) {
+			// already closed
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Ensemble-level view of a set of replicas: per tick mean and 95% confidence
+ * interval half width (normal approximation) of every series of RunResult.
+ */
+public class EnsembleSummary {
+
+	private static final double Z_95 = 1.959964;
+
+	private final int replicas;
+	private final double[][] means;
+	private final double[][] confidences;
+
+	public EnsembleSummary(RunResult[] results) {
+		if (results.length == 0) {
+			throw new IllegalArgumentException("Cannot summarize an empty ensemble.");
+		}
+		int ticks = results[0].getTicks();
+		int seriesCount = RunResult.SERIES_NAMES.length;
+		this.replicas = results.length;
+		this.means = new double[seriesCount][ticks];
+		this.confidences = new double[seriesCount][ticks];
+
+		for (int s = 0; s < seriesCount; s++) {
+			for (int t = 0; t < ticks; t++) {
+				double sum = 0;
+				double sumSquares = 0;
+				for (RunResult result : results) {
+					double value = result.getValue(s, t);
+					sum += value;
+					sumSquares += value * value;
+				}
+				double mean = sum / replicas;
+				means[s][t] = mean;
+				if (replicas > 1) {
+					double variance = Math.max(0, (sumSquares - replicas * mean * mean) / (replicas - 1));
+					confidences[s][t] = Z_95 * Math.sqrt(variance / replicas);
+				}
+			}
+		}
+	}
+
+	public int getReplicas() {
+		return replicas;
+	}
+
+	public int getTicks() {
+		return means[0].length;
+	}
+
+	public double getMean(int seriesId, int tick) {
+		return means[seriesId][tick];
+	}
+
+	/**
+	 * @param seriesId Series id
+	 * @param tick Tick
+	 * @return half width of the 95% confidence interval of the mean
+	 */
+	public double getConfidence(int seriesId, int tick) {
+		return confidences[seriesId][tick];
+	}
+
+}
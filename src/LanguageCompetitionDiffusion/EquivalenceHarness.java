@@ -0,0 +1,369 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import cern.jet.random.engine.MersenneTwister;
+
+/**
+ * Statistical validation of the fast engines against the agent based model. Engines
+ * which change the update order or the use of the random streams cannot reproduce
+ * the reference run by run, so both are run with many seeds and the distributions of
+ * their outputs are compared instead, see TwoSampleComparison.
+ *
+ * Observables, one value per run:
+ *
+ * - the final share of X, Y and XY speakers,
+ * - the extinction time, the first tick at which X or Y has no speakers left
+ *   (ticks + 1 if both survive),
+ * - the mean similarity index at a quarter, half, three quarters and the end of the
+ *   run, for engines which simulate the cultural features.
+ *
+ * Every observable must be shown equivalent within its margin, see compare(). A
+ * candidate is reported DIFFERENT if any observable differs, INCONCLUSIVE if the runs
+ * are too few to decide, and only passes if every observable is EQUIVALENT.
+ */
+public class EquivalenceHarness {
+
+	/**
+	 * A simulation engine producing one RunResult per seed.
+	 */
+	public interface Engine {
+
+		String getName();
+
+		/**
+		 * @param config Model configuration, randomSeed is the seed of the first run
+		 * @param replicas Number of runs, with consecutive seeds
+		 * @param ticks Number of ticks per run
+		 * @return one result per run
+		 */
+		RunResult[] run(ModelConfiguration config, int replicas, int ticks);
+
+		/**
+		 * @return TRUE if every run gives the expected trajectory instead of a sample, only
+		 *         the means are then compared
+		 */
+		boolean isDeterministic();
+	}
+
+	/**
+	 * ReplicaEnsemble, all runs stepped together.
+	 */
+	public static class EnsembleEngine implements Engine {
+
+		public String getName() {
+			return "ensemble";
+		}
+
+		public RunResult[] run(ModelConfiguration config, int replicas, int ticks) {
+			return new ReplicaEnsemble(config, replicas).run(ticks);
+		}
+
+		public boolean isDeterministic() {
+			return false;
+		}
+	}
+
+	/**
+	 * SynchronousKernel with the implementation selected at runtime, local neighborhoods only.
+	 */
+	public static class SynchronousEngine implements Engine {
+
+		private final double interactionProbability;
+
+		/**
+		 * @param interactionProbability Share of cells which interact in a tick
+		 */
+		public SynchronousEngine(double interactionProbability) {
+			this.interactionProbability = interactionProbability;
+		}
+
+		public String getName() {
+			return "synchronous";
+		}
+
+		public RunResult[] run(ModelConfiguration config, int replicas, int ticks) {
+			int baseSeed = config.getInt("randomSeed");
+			RunResult[] results = new RunResult[replicas];
+			for (int r = 0; r < replicas; r++) {
+				SynchronousKernel kernel = SynchronousKernel.create(
+						config.with("randomSeed", baseSeed + r), interactionProbability);
+				double[][] series = newSeries(ticks);
+				for (int t = 0; t < ticks; t++) {
+					kernel.step();
+					series[RunResult.SPEAKERS_X][t] = kernel.countSpeakers(1);
+					series[RunResult.SPEAKERS_Y][t] = kernel.countSpeakers(2);
+					series[RunResult.SPEAKERS_XY][t] = kernel.countSpeakers(3);
+				}
+				int[] languages = kernel.getLanguages();
+				byte[] finalLanguages = new byte[languages.length];
+				for (int c = 0; c < languages.length; c++) {
+					finalLanguages[c] = (byte) languages[c];
+				}
+				results[r] = new RunResult(baseSeed + r, series, finalLanguages);
+			}
+			return results;
+		}
+
+		public boolean isDeterministic() {
+			return false;
+		}
+	}
+
+	/**
+	 * MeanFieldEngine, for the fully connected neighborhood only. The ODE updater gives
+	 * the same trajectory for every seed, so it is compared with the mean of the
+	 * reference runs.
+	 */
+	public static class MeanFieldCandidate implements Engine {
+
+		private final int mode;
+		private final double interactionProbability;
+		private final int leapsPerTick;
+
+		/**
+		 * @param mode MeanFieldEngine.ODE or MeanFieldEngine.TAU_LEAPING
+		 * @param interactionProbability Share of agent steps which lead to a transmission
+		 * @param leapsPerTick Number of tau-leaping updates per tick
+		 */
+		public MeanFieldCandidate(int mode, double interactionProbability, int leapsPerTick) {
+			this.mode = mode;
+			this.interactionProbability = interactionProbability;
+			this.leapsPerTick = leapsPerTick;
+		}
+
+		public String getName() {
+			return mode == MeanFieldEngine.ODE ? "meanfield-ode" : "meanfield-tau";
+		}
+
+		public boolean isDeterministic() {
+			return mode == MeanFieldEngine.ODE;
+		}
+
+		public RunResult[] run(ModelConfiguration config, int replicas, int ticks) {
+			int baseSeed = config.getInt("randomSeed");
+			RunResult[] results = new RunResult[replicas];
+			for (int r = 0; r < replicas; r++) {
+				MeanFieldEngine engine = new MeanFieldEngine(config, mode,
+						new MersenneTwister(baseSeed + r), interactionProbability, leapsPerTick);
+				double[][] series = newSeries(ticks);
+				for (int t = 0; t < ticks; t++) {
+					engine.step();
+					series[RunResult.SPEAKERS_X][t] = engine.getSpeakersX();
+					series[RunResult.SPEAKERS_Y][t] = engine.getSpeakersY();
+					series[RunResult.SPEAKERS_XY][t] = engine.getSpeakersXY();
+				}
+				// no spatial state
+				results[r] = new RunResult(baseSeed + r, series, new byte[0]);
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * Series of an engine without cultural features, the similarity is not defined.
+	 */
+	private static double[][] newSeries(int ticks) {
+		double[][] series = new double[RunResult.SERIES_NAMES.length][ticks];
+		Arrays.fill(series[RunResult.MEAN_SIMILARITY], Double.NaN);
+		return series;
+	}
+
+	private final double alpha;
+	private final double maxDistance;
+	private final double shareMargin;
+	private final double extinctionMargin;
+	private final double similarityMargin;
+
+	/**
+	 * @param alpha Significance level of the equivalence of each observable
+	 * @param maxDistance Largest Kolmogorov-Smirnov distance considered equivalent
+	 * @param shareMargin Largest difference of mean final shares considered equivalent
+	 * @param extinctionMargin Largest difference of mean extinction times considered equivalent, as a fraction of the run
+	 * @param similarityMargin Largest difference of mean similarity indices considered equivalent
+	 */
+	public EquivalenceHarness(double alpha, double maxDistance, double shareMargin,
+			double extinctionMargin, double similarityMargin) {
+		this.alpha = alpha;
+		this.maxDistance = maxDistance;
+		this.shareMargin = shareMargin;
+		this.extinctionMargin = extinctionMargin;
+		this.similarityMargin = similarityMargin;
+	}
+
+	/**
+	 * Runs the candidate and compares its observables with the reference results. The
+	 * candidate uses the seeds following those of the reference, so an engine compared
+	 * with itself is compared on independent samples.
+	 *
+	 * Equivalence of the candidate is the intersection of the equivalence of every
+	 * observable, so each one is tested at alpha without correction (intersection-union
+	 * test). Difference tests are Bonferroni corrected. The distributions of a
+	 * deterministic candidate are not compared, only its trajectory with the mean of the
+	 * reference.
+	 *
+	 * @param referenceResults Results of the reference engine
+	 * @param candidate Candidate engine
+	 * @param config Model configuration, randomSeed is the first seed of the reference
+	 * @param ticks Number of ticks per run
+	 * @return one comparison per observable
+	 */
+	public List<TwoSampleComparison> compare(RunResult[] referenceResults, Engine candidate,
+			ModelConfiguration config, int ticks) {
+		int replicas = referenceResults.length;
+		if (replicas < 2 || ticks < 1) {
+			throw new IllegalArgumentException("At least two replicas and one tick are required.");
+		}
+		int baseSeed = config.getInt("randomSeed");
+		RunResult[] candidateResults = candidate.run(config.with("randomSeed", baseSeed + replicas + 1), replicas, ticks);
+
+		List<String> names = new ArrayList<String>();
+		List<double[][]> samples = new ArrayList<double[][]>();
+		List<Double> margins = new ArrayList<Double>();
+		String[] shares = { "finalShareX", "finalShareY", "finalShareXY" };
+		for (int s = RunResult.SPEAKERS_X; s <= RunResult.SPEAKERS_XY; s++) {
+			names.add(shares[s]);
+			samples.add(new double[][] {
+					finalShares(referenceResults, s), finalShares(candidateResults, s) });
+			margins.add(shareMargin);
+		}
+		names.add("extinctionTime");
+		samples.add(new double[][] { extinctionTimes(referenceResults), extinctionTimes(candidateResults) });
+		margins.add(extinctionMargin * ticks);
+		if (!Double.isNaN(candidateResults[0].getValue(RunResult.MEAN_SIMILARITY, 0))
+				&& !Double.isNaN(referenceResults[0].getValue(RunResult.MEAN_SIMILARITY, 0))) {
+			for (int quarter = 1; quarter <= 4; quarter++) {
+				int tick = Math.max(1, ticks * quarter / 4);
+				names.add("meanSimilarity@" + tick);
+				samples.add(new double[][] {
+						values(referenceResults, RunResult.MEAN_SIMILARITY, tick - 1),
+						values(candidateResults, RunResult.MEAN_SIMILARITY, tick - 1) });
+				margins.add(similarityMargin);
+			}
+		}
+
+		double differenceAlpha = alpha / names.size();
+		// the distribution of a deterministic candidate is a single point
+		double distance = candidate.isDeterministic() ? Double.POSITIVE_INFINITY : maxDistance;
+		List<TwoSampleComparison> comparisons = new ArrayList<TwoSampleComparison>();
+		for (int i = 0; i < names.size(); i++) {
+			comparisons.add(new TwoSampleComparison(names.get(i), samples.get(i)[0], samples.get(i)[1],
+					margins.get(i), distance, alpha, differenceAlpha));
+		}
+		return comparisons;
+	}
+
+	private static double[] finalShares(RunResult[] results, int seriesId) {
+		double[] shares = new double[results.length];
+		for (int r = 0; r < results.length; r++) {
+			double total = results[r].getFinalValue(RunResult.SPEAKERS_X) + results[r].getFinalValue(RunResult.SPEAKERS_Y)
+					+ results[r].getFinalValue(RunResult.SPEAKERS_XY);
+			shares[r] = results[r].getFinalValue(seriesId) / total;
+		}
+		return shares;
+	}
+
+	private static double[] extinctionTimes(RunResult[] results) {
+		double[] times = new double[results.length];
+		for (int r = 0; r < results.length; r++) {
+			int ticks = results[r].getTicks();
+			times[r] = ticks + 1;
+			for (int t = 0; t < ticks; t++) {
+				if (results[r].getValue(RunResult.SPEAKERS_X, t) == 0 || results[r].getValue(RunResult.SPEAKERS_Y, t) == 0) {
+					times[r] = t + 1;
+					break;
+				}
+			}
+		}
+		return times;
+	}
+
+	private static double[] values(RunResult[] results, int seriesId, int tick) {
+		double[] values = new double[results.length];
+		for (int r = 0; r < results.length; r++) {
+			values[r] = results[r].getValue(seriesId, tick);
+		}
+		return values;
+	}
+
+	/**
+	 * Command line entry point: replicas ticks [interactionProbability=p] [name=value ...].
+	 * Runs the agent based model once, on a 10 x 10 grid unless configured otherwise,
+	 * and compares every candidate engine with it. Candidates without cultural features
+	 * use interactionProbability, by default the share of agent steps which reached
+	 * imitate() in the reference runs. Prints one line per observable and exits with
+	 * status 1 unless every candidate is equivalent.
+	 *
+	 * @param args Arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: EquivalenceHarness replicas ticks [interactionProbability=p] [name=value ...]");
+			System.exit(1);
+		}
+		ModelConfiguration config = ModelConfiguration.defaults().with("randomSeed", 1)
+				.with("worldWidth", 10).with("worldHeight", 10).with("initialNumAgents", 100);
+		double interactionProbability = Double.NaN;
+		for (int i = 2; i < args.length; i++) {
+			String[] pair = args[i].split("=", 2);
+			if (pair[0].equals("interactionProbability")) {
+				interactionProbability = Double.parseDouble(pair[1]);
+			}
+			else {
+				config = config.withParsed(pair[0], pair[1]);
+			}
+		}
+		int replicas = Integer.parseInt(args[0]);
+		int ticks = Integer.parseInt(args[1]);
+
+		ReferenceEngine reference = new ReferenceEngine();
+		RunResult[] referenceResults = reference.run(config, replicas, ticks);
+		if (Double.isNaN(interactionProbability)) {
+			interactionProbability = reference.getInteractionRate();
+		}
+		System.err.println(String.format(Locale.ROOT, "interaction probability of the candidates: %.4f",
+				interactionProbability));
+
+		List<Engine> candidates = new ArrayList<Engine>();
+		candidates.add(new EnsembleEngine());
+		// the kernel only simulates local neighborhoods, the mean-field engine only the fully connected one
+		if (config.getInt("neighborhoodType") != 2) {
+			candidates.add(new SynchronousEngine(interactionProbability));
+		}
+		else {
+			candidates.add(new MeanFieldCandidate(MeanFieldEngine.ODE, interactionProbability, 1));
+			candidates.add(new MeanFieldCandidate(MeanFieldEngine.TAU_LEAPING, interactionProbability, 1));
+		}
+
+		EquivalenceHarness harness = new EquivalenceHarness(0.05, 0.25, 0.05, 0.1, 0.02);
+		boolean allPassed = true;
+		System.out.println("candidate,observable,referenceMean,candidateMean,margin,tostP,welchP,hedgesG,ksD,ksP,dBound,result");
+		for (Engine candidate : candidates) {
+			int outcome = TwoSampleComparison.EQUIVALENT;
+			for (TwoSampleComparison comparison : harness.compare(referenceResults, candidate, config, ticks)) {
+				System.out.println(String.format(Locale.ROOT, "%s,%s,%.6f,%.6f,%.4g,%.4g,%.4g,%.4f,%.4f,%.4g,%.4f,%s",
+						candidate.getName(), comparison.getObservable(),
+						comparison.getReferenceMean(), comparison.getCandidateMean(), comparison.getMargin(),
+						comparison.getTostPValue(), comparison.getWelchPValue(), comparison.getHedgesG(),
+						comparison.getKsStatistic(), comparison.getKsPValue(), comparison.getDistanceBound(),
+						TwoSampleComparison.OUTCOME_NAMES[comparison.getOutcome()]));
+				// any difference dominates, then any lack of power
+				if (comparison.getOutcome() == TwoSampleComparison.DIFFERENT) {
+					outcome = TwoSampleComparison.DIFFERENT;
+				}
+				else if (comparison.getOutcome() == TwoSampleComparison.INCONCLUSIVE
+						&& outcome == TwoSampleComparison.EQUIVALENT) {
+					outcome = TwoSampleComparison.INCONCLUSIVE;
+				}
+			}
+			System.err.println(candidate.getName() + ": " + TwoSampleComparison.OUTCOME_NAMES[outcome]
+					+ (outcome == TwoSampleComparison.INCONCLUSIVE ? " (more replicas needed)" : ""));
+			allPassed &= outcome == TwoSampleComparison.EQUIVALENT;
+		}
+		System.exit(allPassed ? 0 : 1);
+	}
+
+}
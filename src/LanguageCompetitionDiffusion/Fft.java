@@ -0,0 +1,157 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * In place complex discrete Fourier transforms on separate real and imaginary
+ * arrays. Power of two lengths use an iterative radix-2 transform, other lengths
+ * (e.g. a 40x40 grid) use Bluestein's algorithm on top of it, so every length costs
+ * O(n log n).
+ */
+public final class Fft {
+
+	private Fft() {
+	}
+
+	/**
+	 * Forward transform of a row major 2D field.
+	 *
+	 * @param re Real parts, width * height values
+	 * @param im Imaginary parts, width * height values
+	 * @param width Field width
+	 * @param height Field height
+	 * @param inverse True for the inverse transform, not normalized
+	 */
+	public static void transform2D(double[] re, double[] im, int width, int height, boolean inverse) {
+		double[] rowRe = new double[width];
+		double[] rowIm = new double[width];
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(re, y * width, rowRe, 0, width);
+			System.arraycopy(im, y * width, rowIm, 0, width);
+			transform(rowRe, rowIm, inverse);
+			System.arraycopy(rowRe, 0, re, y * width, width);
+			System.arraycopy(rowIm, 0, im, y * width, width);
+		}
+		double[] columnRe = new double[height];
+		double[] columnIm = new double[height];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				columnRe[y] = re[y * width + x];
+				columnIm[y] = im[y * width + x];
+			}
+			transform(columnRe, columnIm, inverse);
+			for (int y = 0; y < height; y++) {
+				re[y * width + x] = columnRe[y];
+				im[y * width + x] = columnIm[y];
+			}
+		}
+	}
+
+	/**
+	 * Transform of any length.
+	 *
+	 * @param re Real parts
+	 * @param im Imaginary parts
+	 * @param inverse True for the inverse transform, not normalized
+	 */
+	public static void transform(double[] re, double[] im, boolean inverse) {
+		int n = re.length;
+		if (n <= 1) {
+			return;
+		}
+		if ((n & (n - 1)) == 0) {
+			radix2(re, im, inverse);
+		}
+		else {
+			bluestein(re, im, inverse);
+		}
+	}
+
+	private static void radix2(double[] re, double[] im, boolean inverse) {
+		int n = re.length;
+		// bit reversal permutation
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				double swap = re[i];
+				re[i] = re[j];
+				re[j] = swap;
+				swap = im[i];
+				im[i] = im[j];
+				im[j] = swap;
+			}
+		}
+		for (int length = 2; length <= n; length <<= 1) {
+			double angle = 2 * Math.PI / length * (inverse ? 1 : -1);
+			double stepRe = Math.cos(angle);
+			double stepIm = Math.sin(angle);
+			for (int start = 0; start < n; start += length) {
+				double wRe = 1;
+				double wIm = 0;
+				for (int k = 0; k < length / 2; k++) {
+					int a = start + k;
+					int b = a + length / 2;
+					double tRe = re[b] * wRe - im[b] * wIm;
+					double tIm = re[b] * wIm + im[b] * wRe;
+					re[b] = re[a] - tRe;
+					im[b] = im[a] - tIm;
+					re[a] += tRe;
+					im[a] += tIm;
+					double nextRe = wRe * stepRe - wIm * stepIm;
+					wIm = wRe * stepIm + wIm * stepRe;
+					wRe = nextRe;
+				}
+			}
+		}
+	}
+
+	private static void bluestein(double[] re, double[] im, boolean inverse) {
+		int n = re.length;
+		int m = Integer.highestOneBit(2 * n - 1) << 1;
+		double sign = inverse ? 1 : -1;
+
+		// chirp w[k] = exp(sign * i * pi * k^2 / n)
+		double[] chirpRe = new double[n];
+		double[] chirpIm = new double[n];
+		for (int k = 0; k < n; k++) {
+			double angle = sign * Math.PI * ((long) k * k % (2L * n)) / n;
+			chirpRe[k] = Math.cos(angle);
+			chirpIm[k] = Math.sin(angle);
+		}
+
+		double[] aRe = new double[m];
+		double[] aIm = new double[m];
+		for (int k = 0; k < n; k++) {
+			aRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+			aIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+		}
+		double[] bRe = new double[m];
+		double[] bIm = new double[m];
+		bRe[0] = chirpRe[0];
+		bIm[0] = -chirpIm[0];
+		for (int k = 1; k < n; k++) {
+			bRe[k] = bRe[m - k] = chirpRe[k];
+			bIm[k] = bIm[m - k] = -chirpIm[k];
+		}
+
+		// circular convolution of a and b
+		radix2(aRe, aIm, false);
+		radix2(bRe, bIm, false);
+		for (int k = 0; k < m; k++) {
+			double productRe = aRe[k] * bRe[k] - aIm[k] * bIm[k];
+			aIm[k] = aRe[k] * bIm[k] + aIm[k] * bRe[k];
+			aRe[k] = productRe;
+		}
+		radix2(aRe, aIm, true);
+
+		for (int k = 0; k < n; k++) {
+			double cRe = aRe[k] / m;
+			double cIm = aIm[k] / m;
+			re[k] = cRe * chirpRe[k] - cIm * chirpIm[k];
+			im[k] = cRe * chirpIm[k] + cIm * chirpRe[k];
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Immutable copy of the grid state taken at a given tick. Cells are stored
+ * row by row, the cell (x, y) lives at index y * width + x.
+ *
+ * A snapshot is captured on the simulation thread and may then be read freely
+ * from any other thread (rendering, analysis) without touching live agents.
+ */
+public class GridSnapshot {
+
+	private final double tick;
+	private final int width;
+	private final int height;
+	private final int[] languages;
+	private final double[] similarities;
+	private final int numFeatures;
+	private final int[] traits;
+
+	/**
+	 * The arrays are taken over by the snapshot and must not be modified afterwards.
+	 *
+	 * @param tick Tick at which the snapshot was captured
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param languages Language id per cell, 0 for empty cells
+	 * @param similarities Neighborhood similarity index per cell
+	 */
+	public GridSnapshot(double tick, int width, int height, int[] languages, double[] similarities) {
+		this(tick, width, height, languages, similarities, 0, null);
+	}
+
+	/**
+	 * The arrays are taken over by the snapshot and must not be modified afterwards.
+	 *
+	 * @param tick Tick at which the snapshot was captured
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param languages Language id per cell, 0 for empty cells
+	 * @param similarities Neighborhood similarity index per cell
+	 * @param numFeatures Number of cultural features per cell
+	 * @param traits Feature values, feature f of a cell at cell * numFeatures + f, or null
+	 */
+	public GridSnapshot(double tick, int width, int height, int[] languages, double[] similarities,
+			int numFeatures, int[] traits) {
+		if (languages.length != width * height || similarities.length != width * height) {
+			throw new IllegalArgumentException("Snapshot arrays do not match grid size.");
+		}
+		if (traits != null && traits.length != width * height * numFeatures) {
+			throw new IllegalArgumentException("Snapshot traits do not match grid size.");
+		}
+		this.tick = tick;
+		this.width = width;
+		this.height = height;
+		this.languages = languages;
+		this.similarities = similarities;
+		this.numFeatures = numFeatures;
+		this.traits = traits;
+	}
+
+	/**
+	 * Captures the language and similarity index of every cell.
+	 *
+	 * @param tick Current tick
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param agents Agents indexed by cell, null for empty cells
+	 * @param cells Neighborhood cells indexed by cell
+	 * @return snapshot
+	 */
+	public static GridSnapshot capture(double tick, int width, int height, Agent[] agents, NeighborhoodCell[] cells) {
+		int[] languages = new int[width * height];
+		double[] similarities = new double[width * height];
+		for (int i = 0; i < languages.length; i++) {
+			if (agents[i] != null) {
+				languages[i] = agents[i].getType();
+			}
+			similarities[i] = cells[i].getSimilarityIndex();
+		}
+		return new GridSnapshot(tick, width, height, languages, similarities);
+	}
+
+	/**
+	 * Captures the language, similarity index and cultural feature values of every cell.
+	 * Empty cells get 0 for every feature.
+	 *
+	 * @param tick Current tick
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param numFeatures Number of cultural features
+	 * @param agents Agents indexed by cell, null for empty cells
+	 * @param cells Neighborhood cells indexed by cell
+	 * @return snapshot
+	 */
+	public static GridSnapshot captureWithTraits(double tick, int width, int height, int numFeatures,
+			Agent[] agents, NeighborhoodCell[] cells) {
+		GridSnapshot snapshot = capture(tick, width, height, agents, cells);
+		int[] traits = new int[width * height * numFeatures];
+		for (int i = 0; i < agents.length; i++) {
+			if (agents[i] != null) {
+				for (int f = 0; f < numFeatures; f++) {
+					traits[i * numFeatures + f] = agents[i].features.get(f).getValue();
+				}
+			}
+		}
+		return new GridSnapshot(tick, width, height, snapshot.languages, snapshot.similarities, numFeatures, traits);
+	}
+
+	/**
+	 * Lays out the speakers of a population without positions over the grid, in the
+	 * order X, XY, Y, so that each language covers a share of the cells equal to its
+	 * share of the population. Cell i shows agent i * totalAgents / cells. The
+	 * similarity index is not defined and set to 0.
+	 *
+	 * @param tick Current tick
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param speakersX Number of X speakers
+	 * @param speakersY Number of Y speakers
+	 * @param speakersXY Number of XY speakers
+	 * @return snapshot
+	 */
+	public static GridSnapshot composition(double tick, int width, int height,
+			int speakersX, int speakersY, int speakersXY) {
+		int[] languages = new int[width * height];
+		long totalAgents = speakersX + speakersY + speakersXY;
+		for (int i = 0; i < languages.length; i++) {
+			long agent = i * totalAgents / languages.length;
+			languages[i] = agent < speakersX ? 1 : (agent < speakersX + speakersXY ? 3 : 2);
+		}
+		return new GridSnapshot(tick, width, height, languages, new double[languages.length]);
+	}
+
+	public double getTick() {
+		return tick;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int size() {
+		return languages.length;
+	}
+
+	public int getLanguage(int index) {
+		return languages[index];
+	}
+
+	public int getLanguage(int x, int y) {
+		return languages[y * width + x];
+	}
+
+	public double getSimilarity(int index) {
+		return similarities[index];
+	}
+
+	public double getSimilarity(int x, int y) {
+		return similarities[y * width + x];
+	}
+
+	/**
+	 * @return number of features per cell, 0 if the snapshot has no traits
+	 */
+	public int getNumFeatures() {
+		return traits != null ? numFeatures : 0;
+	}
+
+	public int getTrait(int index, int feature) {
+		return traits[index * numFeatures + feature];
+	}
+
+}
@@ -1,5 +1,10 @@
 package LanguageCompetitionDiffusion;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import repast.simphony.context.Context;
 import repast.simphony.context.space.grid.GridFactoryFinder;
 import repast.simphony.dataLoader.ContextBuilder;
@@ -23,8 +28,20 @@ public class LanguageCompetitionDiffusionModel implements ContextBuilder<Object>
 		int width = (Integer)p.getValue("worldWidth");
 		int percentX = (Integer)p.getValue("percentX");
 		int percentY = (Integer)p.getValue("percentY");
+		int snapshotInterval = (Integer)p.getValue("snapshotInterval");
+		int frameRate = (Integer)p.getValue("frameRate");
+		int neighborhoodType = (Integer)p.getValue("neighborhoodType");
+		int populationEngine = (Integer)p.getValue("populationEngine");
+		int analysisInterval = (Integer)p.getValue("analysisInterval");
+		int changeFeedPort = (Integer)p.getValue("changeFeedPort");
+		int changeFeedFile = (Integer)p.getValue("changeFeedFile");
 		int agentId = 0;
 		
+		// Agents and neighborhood cells indexed by cell (y * width + x), shared with
+		// components that need fast access to the whole grid state
+		final Agent[] cellAgents = new Agent[width * height];
+		final NeighborhoodCell[] cells = new NeighborhoodCell[width * height];
+		
 		// Create a new 2D torroidal, single occupancy grid on which the agents will live.
 		final Grid<Object> grid = GridFactoryFinder
 				.createGridFactory(null)
@@ -39,6 +56,34 @@ public class LanguageCompetitionDiffusionModel implements ContextBuilder<Object>
 								height)
 							);
 		
+		final GridValueLayer neighborhoodLayer = new GridValueLayer(
+				"neighborhoodLayer", 
+				true, 
+				new WrapAroundBorders(), 
+				width, 
+				height);
+		
+		context.addValueLayer(neighborhoodLayer);
+		
+		// Fully connected populations can be simulated from speaker counts only,
+		// see MeanFieldEngine. No agents are created in this case, the displays draw
+		// the composition of the population on the neighborhood layer.
+		if (populationEngine != 0) {
+			if (neighborhoodType != 2) {
+				throw new IllegalArgumentException(
+						"Population engines require the fully connected neighborhood (neighborhoodType = 2).");
+			}
+			final MeanFieldEngine engine = new MeanFieldEngine(
+					ModelConfiguration.fromParameters(p), 
+					populationEngine, 
+					RandomHelper.getGenerator(), 
+					(Double)p.getValue("interactionProbability"), 
+					(Integer)p.getValue("leapsPerTick"));
+			context.add(engine);
+			context.add(new SnapshotRenderer(width, height, engine, snapshotInterval, frameRate));
+			return context;
+		}
+		
 		if ((percentX > 0 && percentY > 0) && (percentX < 100 && percentY < 100)) {
 			int[] agentGroups = new int[3];
 			agentGroups[0] = (numAgents * percentX) / 100;
@@ -56,6 +101,7 @@ public class LanguageCompetitionDiffusionModel implements ContextBuilder<Object>
 							Agent agent = new Agent("Agent-" + agentId, agentType);
 							context.add(agent);
 							grid.moveTo(agent, x, y);
+							cellAgents[(y % height) * width + (x % width)] = agent;
 							l++;
 							agentId++;
 						}
@@ -69,28 +115,72 @@ public class LanguageCompetitionDiffusionModel implements ContextBuilder<Object>
 	            	context.add(agent);
 	            	agentId++;
                     grid.moveTo(agent, i, j);
+                    cellAgents[j * width + i] = agent;
 	            }
 			}
 		}
 		
-		final GridValueLayer neighborhoodLayer = new GridValueLayer(
-				"neighborhoodLayer", 
-				true, 
-				new WrapAroundBorders(), 
-				width, 
-				height);
-		
-		context.addValueLayer(neighborhoodLayer);
-		
 		for (int i = 0; i < width; ++i) {
             for (int j = 0; j < height; ++j) {
     				final NeighborhoodCell cell = new NeighborhoodCell(i, j);
                     context.add(cell);
                     grid.moveTo(cell, i, j);
                     neighborhoodLayer.set(cell.getSimilarityIndex(), i, j);
+                    cells[j * width + i] = cell;
             }
 		}
 		
+		// Displays render from periodic snapshots instead of reading live agents
+		context.add(new SnapshotRenderer(width, height, cellAgents, cells, snapshotInterval, frameRate));
+		
+		// Region analytics are kept up to date from the changes reported by agents
+		final List<CellChangeListener> changeListeners = new ArrayList<CellChangeListener>();
+		final RegionAnalytics regionAnalytics = new RegionAnalytics(new TorusNeighborhood(width, height), cellAgents);
+		context.add(regionAnalytics);
+		changeListeners.add(regionAnalytics);
+		
+		// Per tick deltas, only tracked when they are served on a local port or recorded to a file
+		if (changeFeedPort > 0 || changeFeedFile != 0) {
+			final ChangeFeed changeFeed = new ChangeFeed(cellAgents, cells, (Integer)p.getValue("numFeatures"), 64);
+			context.add(changeFeed);
+			changeListeners.add(changeFeed);
+			if (changeFeedFile != 0) {
+				final File output = new File("output", "change_feed_" + RandomHelper.getSeed() + ".bin");
+				try {
+					changeFeed.subscribe(new DeltaStreamSubscriber(output));
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("Cannot open change feed output " + output, e);
+				}
+			}
+			if (changeFeedPort > 0) {
+				try {
+					new ChangeFeedServer(changeFeed, changeFeedPort);
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("Cannot open change feed port " + changeFeedPort, e);
+				}
+			}
+		}
+		
+		for (int i = 0; i < cellAgents.length; i++) {
+			if (cellAgents[i] != null) {
+				cellAgents[i].setChangeListeners(changeListeners, i);
+			}
+		}
+		
+		// Spatial observables are computed on snapshots in the background, 0 disables them
+		if (analysisInterval > 0) {
+			final File output = new File("output", "spatial_analysis_" + RandomHelper.getSeed() + ".csv");
+			try {
+				context.add(new SpatialAnalyzer(width, height, (Integer)p.getValue("numFeatures"), 
+						cellAgents, cells, analysisInterval, new SpatialAnalysisSink(output)));
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot open spatial analysis output " + output, e);
+			}
+		}
+		
 		//System.out.println("Layer: " + neighborhoodLayer.getName());
 		
 		return context;
@@ -0,0 +1,253 @@
+package LanguageCompetitionDiffusion;
+
+import cern.jet.random.Binomial;
+import cern.jet.random.engine.RandomEngine;
+import repast.simphony.engine.schedule.ScheduledMethod;
+
+/**
+ * Population engine for the fully connected case (neighborhoodType 2), where
+ * Agent.imitate() uses the densities speakersX / totalAgents and speakersY / totalAgents
+ * instead of the local neighborhood. The language dynamics then reduce to the
+ * Minett-Wang population model and only the number of X, Y and XY speakers has to be
+ * simulated.
+ *
+ * Known deviation: in Agent the speaker counts are fields of each agent, refreshed
+ * at the end of that agent's own imitate() and 0 before it. An agent therefore sees
+ * the densities as of its previous transmission, and its first transmission sees
+ * density 0 for both languages. This engine always uses the current densities.
+ *
+ * One tick corresponds to one step of every agent. Two updaters are available:
+ * ODE integrates the expected flows between the three groups (4th order Runge-Kutta),
+ * TAU_LEAPING draws the number of agents leaving each group from binomial distributions
+ * with the densities frozen for the duration of a leap.
+ *
+ * Cultural features are not simulated, the share of agent steps which pass the
+ * similarity test and reach imitate() is given by interactionProbability. In the
+ * model it is a scenario parameter, the rate of a given configuration can be measured
+ * with ReferenceEngine.getInteractionRate().
+ */
+public class MeanFieldEngine {
+
+	/**
+	 * Deterministic integration of the expected flows.
+	 */
+	public static final int ODE = 1;
+
+	/**
+	 * Stochastic binomial updates.
+	 */
+	public static final int TAU_LEAPING = 2;
+
+	private static final int ODE_STEPS_PER_TICK = 4;
+
+	private final TransitionRules rules;
+	private final int mode;
+	private final double interactionProbability;
+	private final int leapsPerTick;
+	private final Binomial binomial;
+	private final int totalAgents;
+	// ODE state, as fractions of the population
+	private double x;
+	private double y;
+	private double xy;
+	// tau-leaping state, as speaker counts
+	private int speakersX;
+	private int speakersY;
+	private int speakersXY;
+	private long tick;
+
+	/**
+	 * Builds an engine where every agent step reaches imitate(), with one leap per tick.
+	 *
+	 * @param config Model configuration
+	 * @param mode ODE or TAU_LEAPING
+	 * @param random Random stream used for the initial population and the binomial draws
+	 */
+	public MeanFieldEngine(ModelConfiguration config, int mode, RandomEngine random) {
+		this(config, mode, random, 1.0, 1);
+	}
+
+	/**
+	 * @param config Model configuration
+	 * @param mode ODE or TAU_LEAPING
+	 * @param random Random stream used for the initial population and the binomial draws
+	 * @param interactionProbability Share of agent steps which lead to a transmission
+	 * @param leapsPerTick Number of tau-leaping updates per tick, higher is closer to sequential updates
+	 */
+	public MeanFieldEngine(ModelConfiguration config, int mode, RandomEngine random,
+			double interactionProbability, int leapsPerTick) {
+		if (mode != ODE && mode != TAU_LEAPING) {
+			throw new IllegalArgumentException("Unknown population engine: " + mode);
+		}
+		if (leapsPerTick < 1) {
+			throw new IllegalArgumentException("At least one leap per tick is required.");
+		}
+		this.rules = new TransitionRules(config);
+		this.mode = mode;
+		this.interactionProbability = interactionProbability;
+		this.leapsPerTick = leapsPerTick;
+		this.binomial = new Binomial(1, 0.5, random);
+		this.totalAgents = config.getInt("initialNumAgents");
+
+		// same initial population as the model builder
+		int percentX = config.getInt("percentX");
+		int percentY = config.getInt("percentY");
+		if ((percentX > 0 && percentY > 0) && (percentX < 100 && percentY < 100)) {
+			speakersX = (totalAgents * percentX) / 100;
+			speakersY = (totalAgents * percentY) / 100;
+		}
+		else if (mode == ODE) {
+			speakersX = totalAgents / 3;
+			speakersY = totalAgents / 3;
+		}
+		else {
+			// every agent picks a language uniformly
+			speakersX = nextBinomial(totalAgents, 1.0 / 3);
+			speakersY = nextBinomial(totalAgents - speakersX, 0.5);
+		}
+		speakersXY = totalAgents - speakersX - speakersY;
+		x = (double) speakersX / totalAgents;
+		y = (double) speakersY / totalAgents;
+		xy = (double) speakersXY / totalAgents;
+	}
+
+	/**
+	 * Advances the population by one tick, i.e. one step of every agent.
+	 */
+	@ScheduledMethod(start = 0, interval = 1, priority = 1)
+	public void step() {
+		if (mode == ODE) {
+			for (int i = 0; i < ODE_STEPS_PER_TICK; i++) {
+				integrate(1.0 / ODE_STEPS_PER_TICK);
+			}
+			speakersX = (int) Math.round(x * totalAgents);
+			speakersY = (int) Math.round(y * totalAgents);
+			speakersXY = totalAgents - speakersX - speakersY;
+		}
+		else {
+			for (int i = 0; i < leapsPerTick; i++) {
+				leap(1.0 / leapsPerTick);
+			}
+		}
+		tick++;
+	}
+
+	/**
+	 * One Runge-Kutta step of the flows between X, Y and XY.
+	 *
+	 * @param dt Step length in ticks
+	 */
+	private void integrate(double dt) {
+		double[] k1 = derivatives(x, y, xy);
+		double[] k2 = derivatives(x + dt / 2 * k1[0], y + dt / 2 * k1[1], xy + dt / 2 * k1[2]);
+		double[] k3 = derivatives(x + dt / 2 * k2[0], y + dt / 2 * k2[1], xy + dt / 2 * k2[2]);
+		double[] k4 = derivatives(x + dt * k3[0], y + dt * k3[1], xy + dt * k3[2]);
+		x += dt / 6 * (k1[0] + 2 * k2[0] + 2 * k3[0] + k4[0]);
+		y += dt / 6 * (k1[1] + 2 * k2[1] + 2 * k3[1] + k4[1]);
+		xy = 1 - x - y;
+	}
+
+	private double[] derivatives(double x, double y, double xy) {
+		double vertical = interactionProbability * rules.getVerticalProbability();
+		double horizontal = interactionProbability - vertical;
+		double xToXY = horizontal * rules.xToXY(y) * x;
+		double yToXY = horizontal * rules.yToXY(x) * y;
+		double xyToX = vertical * rules.xyToX(x) * xy;
+		double xyToY = vertical * rules.xyToY(x, y) * xy;
+		return new double[] { xyToX - xToXY, xyToY - yToXY, xToXY + yToXY - xyToX - xyToY };
+	}
+
+	/**
+	 * One tau-leaping update, the densities are frozen at the start of the leap.
+	 *
+	 * @param tau Leap length in ticks
+	 */
+	private void leap(double tau) {
+		double densityX = (double) speakersX / totalAgents;
+		double densityY = (double) speakersY / totalAgents;
+		double vertical = tau * interactionProbability * rules.getVerticalProbability();
+		double horizontal = tau * interactionProbability - vertical;
+
+		int xToXY = nextBinomial(speakersX, horizontal * rules.xToXY(densityY));
+		int yToXY = nextBinomial(speakersY, horizontal * rules.yToXY(densityX));
+		double pXYtoX = vertical * rules.xyToX(densityX);
+		double pXYtoY = vertical * rules.xyToY(densityX, densityY);
+		int xyToX = nextBinomial(speakersXY, pXYtoX);
+		// conditional on not having moved to X
+		int xyToY = nextBinomial(speakersXY - xyToX, pXYtoX < 1 ? pXYtoY / (1 - pXYtoX) : 0);
+
+		speakersX += xyToX - xToXY;
+		speakersY += xyToY - yToXY;
+		speakersXY += xToXY + yToXY - xyToX - xyToY;
+	}
+
+	private int nextBinomial(int n, double p) {
+		if (n <= 0 || p <= 0) {
+			return 0;
+		}
+		if (p >= 1) {
+			return n;
+		}
+		return binomial.nextInt(n, p);
+	}
+
+	/**
+	 * @return number of ticks simulated so far
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	public int getTotalAgents() {
+		return totalAgents;
+	}
+
+	/**
+	 * Returns the total number of speakers of language X in the current iteration step.
+	 *
+	 * @return speakersX
+	 */
+	public int getSpeakersX() {
+		return speakersX;
+	}
+
+	/**
+	 * Returns the total number of speakers of language Y in the current iteration step.
+	 *
+	 * @return speakersY
+	 */
+	public int getSpeakersY() {
+		return speakersY;
+	}
+
+	/**
+	 * Returns the total number of bilingual speakers XY in the current iteration step.
+	 *
+	 * @return speakersXY
+	 */
+	public int getSpeakersXY() {
+		return speakersXY;
+	}
+
+	/**
+	 * @return density of X speakers, not rounded for the ODE updater
+	 */
+	public double getDensityX() {
+		return mode == ODE ? x : (double) speakersX / totalAgents;
+	}
+
+	/**
+	 * @return density of Y speakers, not rounded for the ODE updater
+	 */
+	public double getDensityY() {
+		return mode == ODE ? y : (double) speakersY / totalAgents;
+	}
+
+	/**
+	 * @return density of bilingual XY speakers, not rounded for the ODE updater
+	 */
+	public double getDensityXY() {
+		return mode == ODE ? xy : (double) speakersXY / totalAgents;
+	}
+
+}
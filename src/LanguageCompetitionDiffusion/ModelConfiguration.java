@@ -0,0 +1,179 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import repast.simphony.parameter.Parameters;
+
+/**
+ * Immutable set of model parameters, keyed by the same names as the scenario
+ * parameters.xml. Used by the components that run the model outside the Repast
+ * runtime (population engines, ensembles, sweeps), where a configuration has to be
+ * shared between threads and copied with a few values changed.
+ */
+public final class ModelConfiguration {
+
+	private final Map<String, Object> values;
+
+	private ModelConfiguration(Map<String, Object> values) {
+		this.values = Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * Returns the default configuration of the LanguageCompetitionDiffusion scenario.
+	 *
+	 * @return configuration
+	 */
+	public static ModelConfiguration defaults() {
+		Map<String, Object> values = new TreeMap<String, Object>();
+		values.put("worldWidth", 40);
+		values.put("worldHeight", 40);
+		values.put("initialNumAgents", 1600);
+		values.put("percentX", 0);
+		values.put("percentY", 0);
+		values.put("randomSeed", null);
+		values.put("neighborhoodType", 1);
+		values.put("numFeatures", 10);
+		values.put("numFeatureTraits", 4);
+		values.put("randomFeatures", 1);
+		values.put("volatility", 1.0);
+		values.put("statusX", 0.5);
+		values.put("cXYtoX", 1.0);
+		values.put("cXYtoY", 1.0);
+		values.put("cXtoXY", 1.0);
+		values.put("cYtoXY", 1.0);
+		values.put("mortalityRate", 8.37);
+		values.put("snapshotInterval", 1);
+		values.put("frameRate", 25);
+		values.put("populationEngine", 0);
+		values.put("interactionProbability", 1.0);
+		values.put("leapsPerTick", 1);
+		values.put("analysisInterval", 0);
+		values.put("changeFeedPort", 0);
+		values.put("changeFeedFile", 0);
+		return new ModelConfiguration(values);
+	}
+
+	/**
+	 * Copies all values of the current run parameters.
+	 *
+	 * @param p Run parameters
+	 * @return configuration
+	 */
+	public static ModelConfiguration fromParameters(Parameters p) {
+		Map<String, Object> values = new TreeMap<String, Object>(defaults().values);
+		for (String name : p.getSchema().parameterNames()) {
+			values.put(name, p.getValue(name));
+		}
+		return new ModelConfiguration(values);
+	}
+
+	/**
+	 * Returns a copy of this configuration with one value replaced.
+	 *
+	 * @param name Parameter name
+	 * @param value New value
+	 * @return configuration
+	 */
+	public ModelConfiguration with(String name, Object value) {
+		Map<String, Object> copy = new TreeMap<String, Object>(values);
+		copy.put(name, value);
+		return new ModelConfiguration(copy);
+	}
+
+	/**
+	 * Returns a copy of this configuration with one value parsed from text, using the
+	 * type of the current value (int or double). Accepts name=value arguments of the
+	 * command line tools.
+	 *
+	 * @param name Parameter name
+	 * @param text Value as text
+	 * @return configuration
+	 */
+	public ModelConfiguration withParsed(String name, String text) {
+		Object current = getValue(name);
+		if (current instanceof Double) {
+			return with(name, Double.valueOf(text));
+		}
+		// int parameters, randomSeed defaults to null but is an int as well
+		return with(name, Integer.valueOf(text));
+	}
+
+	/**
+	 * @return all values, sorted by parameter name
+	 */
+	public Map<String, Object> getValues() {
+		return values;
+	}
+
+	public Object getValue(String name) {
+		if (!values.containsKey(name)) {
+			throw new IllegalArgumentException("Unknown parameter: " + name);
+		}
+		return values.get(name);
+	}
+
+	public int getInt(String name) {
+		return ((Number) getValue(name)).intValue();
+	}
+
+	public double getDouble(String name) {
+		return ((Number) getValue(name)).doubleValue();
+	}
+
+	public int getWidth() {
+		return getInt("worldWidth");
+	}
+
+	public int getHeight() {
+		return getInt("worldHeight");
+	}
+
+	public int getNumFeatures() {
+		return getInt("numFeatures");
+	}
+
+	public int getNumFeatureTraits() {
+		return getInt("numFeatureTraits");
+	}
+
+	public double getStatusX() {
+		return getDouble("statusX");
+	}
+
+	public double getVolatility() {
+		return getDouble("volatility");
+	}
+
+	public double getMortalityRate() {
+		return getDouble("mortalityRate");
+	}
+
+	/**
+	 * Probability that a transmission follows the vertical model, as drawn in
+	 * Agent.imitate(): one chance out of (1000 / mortalityRate).
+	 *
+	 * @return probability of the vertical model
+	 */
+	public double getVerticalProbability() {
+		int mortalityPeak = ((int) (1000 / getMortalityRate()) - 1);
+		return 1.0 / (mortalityPeak + 1);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ModelConfiguration && values.equals(((ModelConfiguration) other).values);
+	}
+
+	@Override
+	public int hashCode() {
+		return values.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return values.toString();
+	}
+
+}
@@ -1,9 +1,5 @@
 package LanguageCompetitionDiffusion;
 
-import repast.simphony.engine.schedule.ScheduledMethod;
-import repast.simphony.util.ContextUtils;
-import repast.simphony.valueLayer.GridValueLayer;
-
 public class NeighborhoodCell {
     private final int x, y;
 	private double similarityIndex = 1;
@@ -13,13 +9,15 @@ public class NeighborhoodCell {
 		this.y = y;
 	}
 
-	// Schedule the step method for agents.
-	@ScheduledMethod(start = 0, interval = 1, priority = -1)
-	public void stepNeighborhood() {
-		final GridValueLayer neighborhoodLayer = (GridValueLayer) ContextUtils
-                								.getContext(this).getValueLayer("neighborhoodLayer");
-		//System.out.println("Similarity: " + this.getSimilarityIndex());
-		neighborhoodLayer.set(this.getSimilarityIndex(), x, y);
+	// The neighborhood layer only holds the initial similarity index, the displays
+	// draw the current one from the frames of SnapshotRenderer.
+	
+	public int getX() {
+		return this.x;
+	}
+	
+	public int getY() {
+		return this.y;
 	}
 	
 	public double getSimilarityIndex() {
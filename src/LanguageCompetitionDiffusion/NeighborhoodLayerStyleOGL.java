@@ -2,13 +2,13 @@ package LanguageCompetitionDiffusion;
 
 import java.awt.Color;
 
-import repast.simphony.util.ContextUtils;
 import repast.simphony.valueLayer.ValueLayer;
 import repast.simphony.visualizationOGL2D.ValueLayerStyleOGL;
 
 
 public class NeighborhoodLayerStyleOGL implements ValueLayerStyleOGL {
     protected ValueLayer layer = null;
+    private SnapshotRenderer renderer = null;
 
     @Override
     public void init(final ValueLayer layer) {
@@ -32,18 +32,21 @@ public class NeighborhoodLayerStyleOGL implements ValueLayerStyleOGL {
 
     @Override
     public Color getColor(final double... coordinates) {
-            final double index = layer.get(coordinates);
-            final double ratio = (index * 255) / 2;
-    		
-    	    if (index > 0) {
-	    	    final int red = 255 - (int) ratio;
-	    	    final int green = 255 - (int) ratio;
-	    	    final int blue = 255 - (int) ratio;
-	    	    return new Color(red, green, blue);
-    	    }
-    	    else {
-        	    return new Color(255, 255, 255);
-    	    }
-    	    
+            // prefer the last rendered frame, colours there are already resolved off the tick loop
+            if (renderer == null) {
+            	renderer = SnapshotRenderer.find();
+            }
+            if (renderer != null) {
+            	final SnapshotRenderer.Frame frame = renderer.getFrame();
+            	if (frame != null) {
+            		final int x = (int) coordinates[0];
+            		final int y = (int) coordinates[1];
+            		final GridSnapshot snapshot = frame.getSnapshot();
+            		if (x >= 0 && y >= 0 && x < snapshot.getWidth() && y < snapshot.getHeight()) {
+            			return frame.getSimilarityColor(x, y);
+            		}
+            	}
+            }
+            return RenderPalette.similarityColor(layer.get(coordinates));
     }
 }
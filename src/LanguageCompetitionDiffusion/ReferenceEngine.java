@@ -0,0 +1,114 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.Map;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.engine.environment.RunEnvironment;
+import repast.simphony.engine.environment.RunState;
+import repast.simphony.engine.schedule.Schedule;
+import repast.simphony.parameter.DefaultParameters;
+import repast.simphony.random.RandomHelper;
+
+/**
+ * The agent based model as built by LanguageCompetitionDiffusionModel and stepped by
+ * Agent.step(), run headless outside of the Repast runtime: every run gets its own
+ * schedule, parameters and master context, and the annotated methods of all context
+ * objects are scheduled as the runtime would.
+ *
+ * Repast keeps the run environment in singletons, so runs are executed one after
+ * the other.
+ */
+public class ReferenceEngine implements EquivalenceHarness.Engine {
+
+	private double interactionRate;
+
+	public String getName() {
+		return "reference";
+	}
+
+	public boolean isDeterministic() {
+		return false;
+	}
+
+	public RunResult[] run(ModelConfiguration config, int replicas, int ticks) {
+		Object seed = config.getValue("randomSeed");
+		long baseSeed = (seed != null) ? ((Number) seed).longValue() : (int) System.nanoTime();
+		// agent model with displays and optional outputs off
+		ModelConfiguration base = config.with("populationEngine", 0)
+				.with("snapshotInterval", ticks + 1)
+				.with("analysisInterval", 0)
+				.with("changeFeedPort", 0)
+				.with("changeFeedFile", 0);
+		RunResult[] results = new RunResult[replicas];
+		interactionRate = 0;
+		for (int r = 0; r < replicas; r++) {
+			results[r] = runOnce(base.with("randomSeed", (int) (baseSeed + r)), ticks);
+		}
+		interactionRate /= replicas;
+		return results;
+	}
+
+	/**
+	 * Share of agent steps which reached imitate(), averaged over the runs of the last
+	 * call of run(). Used as interactionProbability of the engines without cultural
+	 * features.
+	 *
+	 * @return interaction rate, between 0 and 1
+	 */
+	public double getInteractionRate() {
+		return interactionRate;
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized RunResult runOnce(ModelConfiguration config, int ticks) {
+		DefaultParameters parameters = new DefaultParameters();
+		for (Map.Entry<String, Object> entry : config.getValues().entrySet()) {
+			Object value = entry.getValue();
+			parameters.addParameter(entry.getKey(), entry.getKey(), value.getClass(), value, false);
+		}
+		int seed = config.getInt("randomSeed");
+
+		Schedule schedule = new Schedule();
+		RunEnvironment.init(schedule, null, parameters, true);
+		Context<Object> context = new DefaultContext<Object>();
+		RunState.init().setMasterContext(context);
+		RandomHelper.setSeed(seed);
+		context = new LanguageCompetitionDiffusionModel().build(context);
+		for (Object object : context) {
+			schedule.schedule(object);
+		}
+
+		int cellCount = config.getWidth() * config.getHeight();
+		double[][] series = new double[RunResult.SERIES_NAMES.length][ticks];
+		byte[] languages = new byte[cellCount];
+		long agentSteps = 0;
+		long interactions = 0;
+		for (int t = 0; t < ticks; t++) {
+			schedule.execute();
+			int[] speakers = new int[4];
+			double similaritySum = 0;
+			int agents = 0;
+			for (Agent agent : (Iterable<Agent>) context.getObjects(Agent.class)) {
+				speakers[agent.getType()]++;
+				similaritySum += agent.getAgentSimilarityIndex();
+				agents++;
+				if (agent.isImitated()) {
+					interactions++;
+				}
+				if (t == ticks - 1) {
+					languages[agent.getCellIndex()] = (byte) agent.getType();
+				}
+			}
+			series[RunResult.SPEAKERS_X][t] = speakers[1];
+			series[RunResult.SPEAKERS_Y][t] = speakers[2];
+			series[RunResult.SPEAKERS_XY][t] = speakers[3];
+			series[RunResult.MEAN_SIMILARITY][t] = agents > 0 ? similaritySum / agents : 0;
+			agentSteps += agents;
+		}
+		schedule.executeEndActions();
+		interactionRate += agentSteps > 0 ? (double) interactions / agentSteps : 0;
+		return new RunResult(seed, series, languages);
+	}
+
+}
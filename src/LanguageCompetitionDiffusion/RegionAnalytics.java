@@ -0,0 +1,192 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.ArrayList;
+
+/**
+ * Publishes the cultural regions (connected agents with identical feature values)
+ * and the language domains (connected agents speaking the same language) of the
+ * grid as per tick data sources. Both are maintained incrementally by a
+ * RegionTracker from the changes reported by Agent.imitate().
+ *
+ * The size distributions are published in four fixed classes, so that each class
+ * is a scalar data source: single cells, 2 to 7 cells, 8 to 63 cells and 64 cells
+ * or more.
+ */
+public class RegionAnalytics implements CellChangeListener {
+
+	// size classes as ranges of RegionTracker histogram bins (powers of two)
+	private static final int SMALL_FIRST_BIN = 1;
+	private static final int MEDIUM_FIRST_BIN = 3;
+	private static final int LARGE_FIRST_BIN = 6;
+
+	private final RegionTracker culturalRegions;
+	private final RegionTracker languageDomains;
+
+	/**
+	 * @param topology Neighborhood of the model grid
+	 * @param agents Agents indexed by cell, null for empty cells
+	 */
+	public RegionAnalytics(TorusNeighborhood topology, final Agent[] agents) {
+		this.culturalRegions = new RegionTracker(topology, new RegionTracker.Equivalence() {
+			public boolean isOccupied(int cell) {
+				return agents[cell] != null;
+			}
+
+			public boolean isEquivalent(int a, int b) {
+				ArrayList<Feature> featuresA = agents[a].features;
+				ArrayList<Feature> featuresB = agents[b].features;
+				for (int i = 0; i < featuresA.size(); i++) {
+					if (featuresA.get(i).getValue() != featuresB.get(i).getValue()) {
+						return false;
+					}
+				}
+				return true;
+			}
+		});
+		this.languageDomains = new RegionTracker(topology, new RegionTracker.Equivalence() {
+			public boolean isOccupied(int cell) {
+				return agents[cell] != null;
+			}
+
+			public boolean isEquivalent(int a, int b) {
+				return agents[a].getType() == agents[b].getType();
+			}
+		});
+	}
+
+	public void cellChanged(int cell, Agent agent, int changes) {
+		if ((changes & (LANGUAGE | TRAITS)) != 0) {
+			culturalRegions.cellChanged(cell);
+		}
+		if ((changes & LANGUAGE) != 0) {
+			languageDomains.cellChanged(cell);
+		}
+	}
+
+	/**
+	 * Returns the number of cultural regions in the current iteration step.
+	 *
+	 * @return culturalRegionCount
+	 */
+	public int getCulturalRegionCount() {
+		return culturalRegions.getRegionCount();
+	}
+
+	/**
+	 * Returns the share of agents belonging to the largest cultural region.
+	 *
+	 * @return largestCulturalRegionFraction
+	 */
+	public double getLargestCulturalRegionFraction() {
+		return culturalRegions.getLargestRegionFraction();
+	}
+
+	/**
+	 * Returns the cultural region sizes in powers of two, see RegionTracker.getSizeHistogram().
+	 *
+	 * @return histogram
+	 */
+	public int[] getCulturalRegionSizeHistogram() {
+		return culturalRegions.getSizeHistogram();
+	}
+
+	/**
+	 * Returns the number of cultural regions made of a single agent.
+	 *
+	 * @return count
+	 */
+	public int getCulturalRegionSingleCellCount() {
+		return culturalRegions.getRegionCount(0, SMALL_FIRST_BIN - 1);
+	}
+
+	/**
+	 * Returns the number of cultural regions with 2 to 7 agents.
+	 *
+	 * @return count
+	 */
+	public int getCulturalRegionSmallCount() {
+		return culturalRegions.getRegionCount(SMALL_FIRST_BIN, MEDIUM_FIRST_BIN - 1);
+	}
+
+	/**
+	 * Returns the number of cultural regions with 8 to 63 agents.
+	 *
+	 * @return count
+	 */
+	public int getCulturalRegionMediumCount() {
+		return culturalRegions.getRegionCount(MEDIUM_FIRST_BIN, LARGE_FIRST_BIN - 1);
+	}
+
+	/**
+	 * Returns the number of cultural regions with 64 agents or more.
+	 *
+	 * @return count
+	 */
+	public int getCulturalRegionLargeCount() {
+		return culturalRegions.getRegionCount(LARGE_FIRST_BIN, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the number of X, Y and XY language domains in the current iteration step.
+	 *
+	 * @return languageDomainCount
+	 */
+	public int getLanguageDomainCount() {
+		return languageDomains.getRegionCount();
+	}
+
+	/**
+	 * Returns the share of agents belonging to the largest language domain.
+	 *
+	 * @return largestLanguageDomainFraction
+	 */
+	public double getLargestLanguageDomainFraction() {
+		return languageDomains.getLargestRegionFraction();
+	}
+
+	/**
+	 * Returns the language domain sizes in powers of two, see RegionTracker.getSizeHistogram().
+	 *
+	 * @return histogram
+	 */
+	public int[] getLanguageDomainSizeHistogram() {
+		return languageDomains.getSizeHistogram();
+	}
+
+	/**
+	 * Returns the number of language domains made of a single agent.
+	 *
+	 * @return count
+	 */
+	public int getLanguageDomainSingleCellCount() {
+		return languageDomains.getRegionCount(0, SMALL_FIRST_BIN - 1);
+	}
+
+	/**
+	 * Returns the number of language domains with 2 to 7 agents.
+	 *
+	 * @return count
+	 */
+	public int getLanguageDomainSmallCount() {
+		return languageDomains.getRegionCount(SMALL_FIRST_BIN, MEDIUM_FIRST_BIN - 1);
+	}
+
+	/**
+	 * Returns the number of language domains with 8 to 63 agents.
+	 *
+	 * @return count
+	 */
+	public int getLanguageDomainMediumCount() {
+		return languageDomains.getRegionCount(MEDIUM_FIRST_BIN, LARGE_FIRST_BIN - 1);
+	}
+
+	/**
+	 * Returns the number of language domains with 64 agents or more.
+	 *
+	 * @return count
+	 */
+	public int getLanguageDomainLargeCount() {
+		return languageDomains.getRegionCount(LARGE_FIRST_BIN, Integer.MAX_VALUE);
+	}
+
+}
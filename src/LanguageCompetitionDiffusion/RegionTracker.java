@@ -0,0 +1,267 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Maintains the connected regions of equivalent cells over the torroidal Moore
+ * neighborhood, e.g. cultural regions (cells with identical trait vectors) or
+ * language domains (cells speaking the same language).
+ *
+ * Regions are kept in a union-find structure, every region also keeps its members
+ * in a circular linked list. Merges are applied as soon as a cell changes. Splits
+ * cannot be detected by union-find, so the region a changed cell belonged to is
+ * only marked invalid, and on the next refresh() the members of the invalid regions
+ * are reset and joined again with their equivalent neighbors. The cost of a refresh
+ * is proportional to the size of the regions touched since the previous one, instead
+ * of a flood fill of the whole grid.
+ */
+public class RegionTracker {
+
+	/**
+	 * Tells which cells belong to the same region.
+	 */
+	public interface Equivalence {
+
+		/**
+		 * @param cell Cell index
+		 * @return false for empty cells, which belong to no region
+		 */
+		boolean isOccupied(int cell);
+
+		/**
+		 * @param a Occupied cell
+		 * @param b Occupied neighbor cell
+		 * @return true if both cells belong to the same region
+		 */
+		boolean isEquivalent(int a, int b);
+	}
+
+	private final TorusNeighborhood topology;
+	private final Equivalence equivalence;
+	private final int[] parent;
+	private final int[] size;
+	private final int[] next;
+	private final boolean[] invalid;
+	private final int[] invalidRoots;
+	private int invalidCount;
+
+	// statistics, recomputed by refresh()
+	private int regionCount;
+	private int largestRegion;
+	private int occupiedCells;
+	private int[] histogram = new int[0];
+
+	public RegionTracker(TorusNeighborhood topology, Equivalence equivalence) {
+		this.topology = topology;
+		this.equivalence = equivalence;
+		int cells = topology.getCellCount();
+		this.parent = new int[cells];
+		this.size = new int[cells];
+		this.next = new int[cells];
+		this.invalid = new boolean[cells];
+		this.invalidRoots = new int[cells];
+		rebuild();
+	}
+
+	/**
+	 * Recomputes all regions from scratch.
+	 */
+	public void rebuild() {
+		for (int cell = 0; cell < parent.length; cell++) {
+			reset(cell);
+		}
+		for (int cell = 0; cell < parent.length; cell++) {
+			join(cell);
+		}
+		for (int i = 0; i < invalidCount; i++) {
+			invalid[invalidRoots[i]] = false;
+		}
+		invalidCount = 0;
+		computeStatistics();
+	}
+
+	/**
+	 * Records a change of a cell. The region the cell belonged to is invalidated
+	 * and the cell is merged with the regions it is now equivalent to.
+	 *
+	 * @param cell Cell index
+	 */
+	public void cellChanged(int cell) {
+		invalidate(find(cell));
+		join(cell);
+		invalidate(find(cell));
+	}
+
+	/**
+	 * Repairs the invalidated regions and updates the statistics.
+	 */
+	public void refresh() {
+		if (invalidCount == 0) {
+			return;
+		}
+		// collect the members first, resetting a region breaks its list
+		int[] members = new int[0];
+		int memberCount = 0;
+		for (int i = 0; i < invalidCount; i++) {
+			int root = invalidRoots[i];
+			invalid[root] = false;
+			if (parent[root] != root) {
+				// merged into another invalid region after being invalidated
+				continue;
+			}
+			if (memberCount + size[root] > members.length) {
+				int[] grown = new int[Math.max(members.length * 2, memberCount + size[root])];
+				System.arraycopy(members, 0, grown, 0, memberCount);
+				members = grown;
+			}
+			int cell = root;
+			do {
+				members[memberCount++] = cell;
+				cell = next[cell];
+			} while (cell != root);
+		}
+		invalidCount = 0;
+
+		for (int i = 0; i < memberCount; i++) {
+			reset(members[i]);
+		}
+		for (int i = 0; i < memberCount; i++) {
+			join(members[i]);
+		}
+		computeStatistics();
+	}
+
+	private void reset(int cell) {
+		parent[cell] = cell;
+		size[cell] = 1;
+		next[cell] = cell;
+	}
+
+	private void join(int cell) {
+		if (!equivalence.isOccupied(cell)) {
+			return;
+		}
+		for (int k = 0; k < TorusNeighborhood.SIZE; k++) {
+			int neighbor = topology.getNeighbor(cell, k);
+			if (equivalence.isOccupied(neighbor) && equivalence.isEquivalent(cell, neighbor)) {
+				union(cell, neighbor);
+			}
+		}
+	}
+
+	private void invalidate(int root) {
+		if (!invalid[root]) {
+			invalid[root] = true;
+			invalidRoots[invalidCount++] = root;
+		}
+	}
+
+	private int find(int cell) {
+		while (parent[cell] != cell) {
+			parent[cell] = parent[parent[cell]];
+			cell = parent[cell];
+		}
+		return cell;
+	}
+
+	private void union(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+		if (rootA == rootB) {
+			return;
+		}
+		if (size[rootA] < size[rootB]) {
+			int swap = rootA;
+			rootA = rootB;
+			rootB = swap;
+		}
+		parent[rootB] = rootA;
+		size[rootA] += size[rootB];
+		// splice the member lists
+		int swap = next[rootA];
+		next[rootA] = next[rootB];
+		next[rootB] = swap;
+		if (invalid[rootB]) {
+			invalidate(rootA);
+		}
+	}
+
+	private void computeStatistics() {
+		regionCount = 0;
+		largestRegion = 0;
+		occupiedCells = 0;
+		int[] bins = new int[32];
+		int usedBins = 0;
+		for (int cell = 0; cell < parent.length; cell++) {
+			if (parent[cell] == cell && equivalence.isOccupied(cell)) {
+				regionCount++;
+				occupiedCells += size[cell];
+				largestRegion = Math.max(largestRegion, size[cell]);
+				int bin = 31 - Integer.numberOfLeadingZeros(size[cell]);
+				bins[bin]++;
+				usedBins = Math.max(usedBins, bin + 1);
+			}
+		}
+		histogram = new int[usedBins];
+		System.arraycopy(bins, 0, histogram, 0, usedBins);
+	}
+
+	/**
+	 * @return number of regions
+	 */
+	public int getRegionCount() {
+		refresh();
+		return regionCount;
+	}
+
+	/**
+	 * @return number of cells in the largest region
+	 */
+	public int getLargestRegionSize() {
+		refresh();
+		return largestRegion;
+	}
+
+	/**
+	 * @return share of the occupied cells which belong to the largest region
+	 */
+	public double getLargestRegionFraction() {
+		refresh();
+		return occupiedCells > 0 ? (double) largestRegion / occupiedCells : 0;
+	}
+
+	/**
+	 * Region size distribution in powers of two: bin k counts the regions with
+	 * 2^k to 2^(k+1) - 1 cells.
+	 *
+	 * @return histogram
+	 */
+	public int[] getSizeHistogram() {
+		refresh();
+		return histogram.clone();
+	}
+
+	/**
+	 * Sums bins of the size distribution without copying it.
+	 *
+	 * @param fromBin First bin, regions with at least 2^fromBin cells
+	 * @param toBin Last bin, inclusive, regions with less than 2^(toBin+1) cells
+	 * @return number of regions
+	 */
+	public int getRegionCount(int fromBin, int toBin) {
+		refresh();
+		int count = 0;
+		for (int bin = Math.max(0, fromBin); bin <= toBin && bin < histogram.length; bin++) {
+			count += histogram[bin];
+		}
+		return count;
+	}
+
+	/**
+	 * @param cell Cell index
+	 * @return number of cells in the region of the cell
+	 */
+	public int getRegionSize(int cell) {
+		refresh();
+		return size[find(cell)];
+	}
+
+}
@@ -0,0 +1,83 @@
+package LanguageCompetitionDiffusion;
+
+import java.awt.Color;
+
+/**
+ * Precomputed colour lookup tables shared by the 2D and 3D styles, so that no
+ * Color instance is allocated while a frame is drawn.
+ */
+public final class RenderPalette {
+
+	/**
+	 * Number of shades used to quantize the similarity index gradient.
+	 */
+	public static final int SIMILARITY_LEVELS = 256;
+
+	private static final Color[] SIMILARITY_COLORS = new Color[SIMILARITY_LEVELS];
+
+	// Language mapping goes as: X = 1 (red), Y = 2 (blue), XY = 3 (green)
+	private static final Color[] LANGUAGE_COLORS = { null, Color.RED, Color.BLUE, Color.GREEN };
+
+	private static final String[] LANGUAGE_TAGS = { "NONE", "X", "Y", "XY" };
+
+	static {
+		// same gradient as the original layer style: white down to mid grey for index 1
+		SIMILARITY_COLORS[0] = Color.WHITE;
+		for (int level = 1; level < SIMILARITY_LEVELS; level++) {
+			final double index = (double) level / (SIMILARITY_LEVELS - 1);
+			final int shade = 255 - (int) ((index * 255) / 2);
+			SIMILARITY_COLORS[level] = new Color(shade, shade, shade);
+		}
+	}
+
+	private RenderPalette() {
+	}
+
+	/**
+	 * Returns the cached shade for a similarity index in [0, 1].
+	 *
+	 * @param index Similarity index
+	 * @return color
+	 */
+	public static Color similarityColor(double index) {
+		return SIMILARITY_COLORS[similarityLevel(index)];
+	}
+
+	/**
+	 * Quantizes a similarity index to a palette level.
+	 *
+	 * @param index Similarity index
+	 * @return level from 0 to SIMILARITY_LEVELS - 1
+	 */
+	public static int similarityLevel(double index) {
+		if (!(index > 0)) {
+			return 0;
+		}
+		if (index >= 1) {
+			return SIMILARITY_LEVELS - 1;
+		}
+		// any positive index gets at least the first shade, as in the original gradient
+		return Math.max(1, (int) Math.round(index * (SIMILARITY_LEVELS - 1)));
+	}
+
+	/**
+	 * Returns the color of a language, or null for unknown languages.
+	 *
+	 * @param language Language id
+	 * @return color
+	 */
+	public static Color languageColor(int language) {
+		return (language > 0 && language < LANGUAGE_COLORS.length) ? LANGUAGE_COLORS[language] : null;
+	}
+
+	/**
+	 * Returns the appearance tag used to detect language changes in the 3D display.
+	 *
+	 * @param language Language id
+	 * @return tag
+	 */
+	public static String languageTag(int language) {
+		return (language > 0 && language < LANGUAGE_TAGS.length) ? LANGUAGE_TAGS[language] : LANGUAGE_TAGS[0];
+	}
+
+}
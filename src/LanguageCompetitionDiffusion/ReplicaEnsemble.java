@@ -0,0 +1,496 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.Locale;
+
+import cern.jet.random.engine.MersenneTwister;
+import cern.jet.random.engine.RandomEngine;
+
+/**
+ * Runs R replicas of the same configuration in lockstep, outside the Repast runtime.
+ *
+ * The read-only parts of a run are built once and shared by all replicas: the
+ * torroidal neighbor table, the transition probabilities for every possible count of
+ * X and Y speakers in a Moore neighborhood, and the configuration. The state of the
+ * replicas is interleaved, the value of feature f of cell c in replica r is stored at
+ * (c * numFeatures + f) * replicas + r, so that one pass over a cell's neighborhood
+ * serves every replica from the same cache lines, see step(). The gain over
+ * independent runs can be measured with the benchmark of main().
+ *
+ * Each agent step follows Agent.step(): a random Moore neighbor is picked, the
+ * interaction happens with a probability equal to their cultural similarity, the
+ * language is transmitted with the vertical or horizontal model, one differing active
+ * trait of the neighbor is copied, and the neighborhood similarity index is updated.
+ * Feature 0 is the language, as in Agent.
+ *
+ * Differences with the Repast model: the grid is always fully populated, every replica
+ * visits the cells in the same random order within a tick (drawn from a shared stream),
+ * and each replica draws from its own random stream seeded with randomSeed + replica.
+ * With the fully connected neighborhood (neighborhoodType 2) the current densities of
+ * the replica are used, while an Agent uses the counts cached at the end of its own
+ * previous imitate(), which are 0 before its first transmission.
+ */
+public class ReplicaEnsemble {
+
+	private static final byte X = 1;
+	private static final byte Y = 2;
+	private static final byte XY = 3;
+
+	private final ModelConfiguration config;
+	private final TorusNeighborhood topology;
+	private final TransitionRules rules;
+	private final int replicas;
+	private final int cellCount;
+	private final int numFeatures;
+	private final int neighborhoodType;
+	private final long baseSeed;
+
+	// transition tables indexed by the number of X or Y speakers among the 8 neighbors
+	private final double[] xToXY = new double[TorusNeighborhood.SIZE + 1];
+	private final double[] yToXY = new double[TorusNeighborhood.SIZE + 1];
+	private final double[] xyToX = new double[TorusNeighborhood.SIZE + 1];
+	private final double[] xyToY = new double[(TorusNeighborhood.SIZE + 1) * (TorusNeighborhood.SIZE + 1)];
+
+	// interleaved replica state
+	private final byte[] traits;
+	// 1 for active features, 0 otherwise, so that the lane loops count without branches
+	private final byte[] active;
+	private final double[] similarity;
+	private final int[] speakers;
+	private final double[] similaritySum;
+	private final RandomEngine[] randoms;
+	private final RandomEngine orderRandom;
+	private final int[] order;
+	// neighbor table and the distance between two cells in the interleaved arrays
+	private final int[] neighborCells;
+	private final int cellStride;
+
+	// per cell scratch: neighbor offsets, and one lane per replica
+	private final int[] neighborBase = new int[TorusNeighborhood.SIZE];
+	private final int[] selected;
+	private final double[] roulette;
+	private final int[] activeCount;
+	private final int[] similarCount;
+	private final boolean[] interacted;
+	private final int[] countX;
+	private final int[] countY;
+
+	/**
+	 * @param config Model configuration, randomSeed is the seed of replica 0
+	 * @param replicas Number of replicas
+	 */
+	public ReplicaEnsemble(ModelConfiguration config, int replicas) {
+		this(config, replicas, new TorusNeighborhood(config.getWidth(), config.getHeight()));
+	}
+
+	/**
+	 * @param config Model configuration, randomSeed is the seed of replica 0
+	 * @param replicas Number of replicas
+	 * @param topology Neighbor table shared with other ensembles of the same grid size
+	 */
+	public ReplicaEnsemble(ModelConfiguration config, int replicas, TorusNeighborhood topology) {
+		if (replicas < 1) {
+			throw new IllegalArgumentException("An ensemble needs at least one replica.");
+		}
+		if (topology.getWidth() != config.getWidth() || topology.getHeight() != config.getHeight()) {
+			throw new IllegalArgumentException("Topology does not match the configured grid size.");
+		}
+		if (config.getNumFeatureTraits() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("At most " + Byte.MAX_VALUE + " feature traits are supported.");
+		}
+		this.config = config;
+		this.topology = topology;
+		this.rules = new TransitionRules(config);
+		this.replicas = replicas;
+		this.cellCount = topology.getCellCount();
+		this.numFeatures = config.getNumFeatures();
+		this.neighborhoodType = config.getInt("neighborhoodType");
+		Object seed = config.getValue("randomSeed");
+		this.baseSeed = (seed != null) ? ((Number) seed).longValue() : (int) System.nanoTime();
+
+		double[] powers = new double[TorusNeighborhood.SIZE + 1];
+		for (int k = 0; k <= TorusNeighborhood.SIZE; k++) {
+			powers[k] = Math.pow((double) k / TorusNeighborhood.SIZE, rules.getVolatility());
+		}
+		for (int k = 0; k <= TorusNeighborhood.SIZE; k++) {
+			xToXY[k] = rules.xToXYFromPower(powers[k]);
+			yToXY[k] = rules.yToXYFromPower(powers[k]);
+			xyToX[k] = rules.xyToXFromPower(powers[k]);
+			for (int l = 0; l <= TorusNeighborhood.SIZE; l++) {
+				xyToY[k * (TorusNeighborhood.SIZE + 1) + l] = rules.xyToYFromPower(powers[k], powers[l]);
+			}
+		}
+
+		this.traits = new byte[cellCount * numFeatures * replicas];
+		this.active = new byte[cellCount * numFeatures * replicas];
+		this.similarity = new double[cellCount * replicas];
+		this.speakers = new int[replicas * 4];
+		this.similaritySum = new double[replicas];
+		this.randoms = new RandomEngine[replicas];
+		for (int r = 0; r < replicas; r++) {
+			randoms[r] = new MersenneTwister((int) (baseSeed + r));
+		}
+		this.orderRandom = new MersenneTwister((int) (baseSeed - 1));
+		this.order = new int[cellCount];
+		for (int c = 0; c < cellCount; c++) {
+			order[c] = c;
+		}
+		this.neighborCells = topology.getNeighbors();
+		this.cellStride = numFeatures * replicas;
+		this.selected = new int[replicas];
+		this.roulette = new double[replicas];
+		this.activeCount = new int[replicas];
+		this.similarCount = new int[replicas];
+		this.interacted = new boolean[replicas];
+		this.countX = new int[replicas];
+		this.countY = new int[replicas];
+		initialize();
+	}
+
+	/**
+	 * Populates every cell as the model builder and the Agent constructor do.
+	 */
+	private void initialize() {
+		int percentX = config.getInt("percentX");
+		int percentY = config.getInt("percentY");
+		boolean groups = (percentX > 0 && percentY > 0) && (percentX < 100 && percentY < 100);
+		int numFeatureTraits = config.getNumFeatureTraits();
+		boolean randomFeatures = config.getInt("randomFeatures") != 0;
+
+		for (int r = 0; r < replicas; r++) {
+			RandomEngine random = randoms[r];
+			byte[] languages = new byte[cellCount];
+			if (groups) {
+				// exact group sizes at random positions
+				int countX = (cellCount * percentX) / 100;
+				int countY = (cellCount * percentY) / 100;
+				for (int c = 0; c < cellCount; c++) {
+					languages[c] = c < countX ? X : (c < countX + countY ? Y : XY);
+				}
+				shuffle(languages, random);
+			}
+			else {
+				for (int c = 0; c < cellCount; c++) {
+					languages[c] = (byte) (1 + nextInt(random, 3));
+				}
+			}
+			for (int c = 0; c < cellCount; c++) {
+				int base = c * numFeatures * replicas + r;
+				traits[base] = languages[c];
+				active[base] = 1;
+				for (int f = 1; f < numFeatures; f++) {
+					traits[base + f * replicas] = (byte) (1 + nextInt(random, numFeatureTraits));
+					active[base + f * replicas] = (byte) ((!randomFeatures || nextInt(random, 2) == 0) ? 1 : 0);
+				}
+				speakers[r * 4 + languages[c]]++;
+			}
+		}
+	}
+
+	/**
+	 * Runs all replicas for the given number of ticks.
+	 *
+	 * @param ticks Number of ticks
+	 * @return one result per replica
+	 */
+	public RunResult[] run(int ticks) {
+		double[][][] series = new double[replicas][RunResult.SERIES_NAMES.length][ticks];
+		for (int t = 0; t < ticks; t++) {
+			step();
+			for (int r = 0; r < replicas; r++) {
+				series[r][RunResult.SPEAKERS_X][t] = speakers[r * 4 + X];
+				series[r][RunResult.SPEAKERS_Y][t] = speakers[r * 4 + Y];
+				series[r][RunResult.SPEAKERS_XY][t] = speakers[r * 4 + XY];
+				series[r][RunResult.MEAN_SIMILARITY][t] = similaritySum[r] / cellCount;
+			}
+		}
+		RunResult[] results = new RunResult[replicas];
+		for (int r = 0; r < replicas; r++) {
+			byte[] languages = new byte[cellCount];
+			for (int c = 0; c < cellCount; c++) {
+				languages[c] = traits[c * numFeatures * replicas + r];
+			}
+			results[r] = new RunResult(baseSeed + r, series[r], languages);
+		}
+		return results;
+	}
+
+	/**
+	 * One tick: every cell of every replica steps once, in a shared random order.
+	 *
+	 * A cell is stepped in all replicas at once, phase by phase, each phase a loop over
+	 * the replica lanes: the offsets of the 8 neighbors are loaded once per cell, and
+	 * the neighbor languages and the feature values of the cell are read as contiguous
+	 * runs of replicas values, and the counts are accumulated without branches. Only the
+	 * draws and the transmission itself are done lane by lane. Every replica draws from its own stream in the same order as Agent.step(),
+	 * so the results do not depend on the number of replicas stepped together.
+	 */
+	public void step() {
+		for (int i = cellCount - 1; i > 0; i--) {
+			int j = nextInt(orderRandom, i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		final int stride = replicas;
+		for (int i = 0; i < cellCount; i++) {
+			final int cell = order[i];
+			final int self = cell * cellStride;
+			final int offset = cell * TorusNeighborhood.SIZE;
+			for (int k = 0; k < TorusNeighborhood.SIZE; k++) {
+				neighborBase[k] = neighborCells[offset + k] * cellStride;
+			}
+
+			// draw the neighbor and the canImitate() roulette of every replica
+			for (int r = 0; r < replicas; r++) {
+				final RandomEngine random = randoms[r];
+				selected[r] = neighborBase[nextInt(random, TorusNeighborhood.SIZE)];
+				roulette[r] = random.nextDouble();
+				activeCount[r] = 0;
+				similarCount[r] = 0;
+			}
+			// canImitate(): affinity index, feature by feature across the replicas
+			for (int f = 0, a = self; f < numFeatures; f++, a += stride) {
+				for (int r = 0; r < replicas; r++) {
+					int b = selected[r] + f * stride + r;
+					activeCount[r] += active[a + r];
+					similarCount[r] += active[a + r] & active[b] & equal(traits[a + r], traits[b]);
+				}
+			}
+			int interacting = 0;
+			for (int r = 0; r < replicas; r++) {
+				// bilinguals are considered similar to both X and Y speakers
+				if (traits[self + r] == XY || traits[selected[r] + r] == XY) {
+					similarCount[r]++;
+				}
+				interacted[r] = roulette[r] < (double) similarCount[r] / activeCount[r];
+				if (interacted[r]) {
+					interacting++;
+				}
+			}
+			if (interacting == 0) {
+				continue;
+			}
+
+			// X and Y speakers among the Moore neighbors, one language run per neighbor
+			if (neighborhoodType != 2) {
+				for (int r = 0; r < replicas; r++) {
+					countX[r] = 0;
+					countY[r] = 0;
+				}
+				for (int k = 0; k < TorusNeighborhood.SIZE; k++) {
+					final int base = neighborBase[k];
+					for (int r = 0; r < replicas; r++) {
+						final byte other = traits[base + r];
+						countX[r] += equal(other, X);
+						countY[r] += equal(other, Y);
+					}
+				}
+			}
+
+			for (int r = 0; r < replicas; r++) {
+				if (interacted[r]) {
+					imitate(self + r, selected[r] + r, r);
+				}
+			}
+
+			// neighborhood similarity, feature runs of the cell against each neighbor
+			for (int r = 0; r < replicas; r++) {
+				similarCount[r] = 0;
+			}
+			for (int k = 0; k < TorusNeighborhood.SIZE; k++) {
+				final int base = neighborBase[k];
+				for (int f = 0, a = self, b = base; f < numFeatures; f++, a += stride, b += stride) {
+					for (int r = 0; r < replicas; r++) {
+						similarCount[r] += equal(traits[a + r], traits[b + r]);
+					}
+				}
+			}
+			for (int r = 0; r < replicas; r++) {
+				if (interacted[r]) {
+					double index = (double) similarCount[r] / (numFeatures * TorusNeighborhood.SIZE);
+					similaritySum[r] += index - similarity[cell * replicas + r];
+					similarity[cell * replicas + r] = index;
+				}
+			}
+		}
+	}
+
+	/**
+	 * imitate() of one replica: language transmission, then one random differing active
+	 * trait of the neighbor is copied.
+	 *
+	 * @param self Index of feature 0 of the cell in the replica
+	 * @param neighbor Index of feature 0 of the selected neighbor in the replica
+	 * @param r Replica
+	 */
+	private void imitate(int self, int neighbor, int r) {
+		final RandomEngine random = randoms[r];
+		final int stride = replicas;
+		boolean vertical = random.nextDouble() < rules.getVerticalProbability();
+		byte language = traits[self];
+		byte target = language;
+		if (neighborhoodType == 2) {
+			int population = speakers[r * 4 + X] + speakers[r * 4 + Y] + speakers[r * 4 + XY];
+			double densityX = (double) speakers[r * 4 + X] / population;
+			double densityY = (double) speakers[r * 4 + Y] / population;
+			target = transmit(language, vertical, random,
+					rules.xToXY(densityY), rules.yToXY(densityX), rules.xyToX(densityX), rules.xyToY(densityX, densityY));
+		}
+		else {
+			target = transmit(language, vertical, random, xToXY[countY[r]], yToXY[countX[r]], xyToX[countX[r]],
+					xyToY[countX[r] * (TorusNeighborhood.SIZE + 1) + countY[r]]);
+		}
+		if (target != language) {
+			traits[self] = target;
+			speakers[r * 4 + language]--;
+			speakers[r * 4 + target]++;
+		}
+
+		int candidates = 0;
+		for (int f = 1; f < numFeatures; f++) {
+			int b = neighbor + f * stride;
+			candidates += active[b] & (1 - equal(traits[b], traits[self + f * stride]));
+		}
+		if (candidates > 0) {
+			int selection = nextInt(random, candidates);
+			for (int f = 1; f < numFeatures; f++) {
+				int b = neighbor + f * stride;
+				if (active[b] != 0 && traits[b] != traits[self + f * stride] && selection-- == 0) {
+					traits[self + f * stride] = traits[b];
+					active[self + f * stride] = 1;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Roulette wheel selection of the target language, in the same order as Agent.imitate().
+	 */
+	private static byte transmit(byte language, boolean vertical, RandomEngine random,
+			double pXtoXY, double pYtoXY, double pXYtoX, double pXYtoY) {
+		switch (language) {
+			case X:
+				return (!vertical && random.nextDouble() <= pXtoXY) ? XY : X;
+			case Y:
+				return (!vertical && random.nextDouble() <= pYtoXY) ? XY : Y;
+			default:
+				if (!vertical) {
+					return XY;
+				}
+				double roulette = random.nextDouble();
+				if (roulette <= pXYtoX) {
+					return X;
+				}
+				return (roulette <= pXYtoX + pXYtoY) ? Y : XY;
+		}
+	}
+
+	/**
+	 * 1 if both values are equal, 0 otherwise, without a branch. Values are traits or
+	 * languages, between 0 and Byte.MAX_VALUE.
+	 */
+	private static int equal(byte a, byte b) {
+		return ((a ^ b) - 1) >>> 31;
+	}
+
+	private static int nextInt(RandomEngine random, int bound) {
+		return (int) (random.nextDouble() * bound);
+	}
+
+	private static void shuffle(byte[] values, RandomEngine random) {
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = nextInt(random, i + 1);
+			byte swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+	}
+
+	public int getReplicas() {
+		return replicas;
+	}
+
+	public ModelConfiguration getConfiguration() {
+		return config;
+	}
+
+	/**
+	 * Times one ensemble of all replicas against as many independent ensembles of one
+	 * replica, the first pass of each warms up the JIT compiler and the second one is
+	 * measured. Prints the replicas simulated per second of both.
+	 *
+	 * @param config Model configuration
+	 * @param replicas Number of replicas
+	 * @param ticks Number of ticks
+	 */
+	public static void benchmark(ModelConfiguration config, int replicas, int ticks) {
+		Object seed = config.getValue("randomSeed");
+		int baseSeed = (seed != null) ? ((Number) seed).intValue() : 1;
+		TorusNeighborhood topology = new TorusNeighborhood(config.getWidth(), config.getHeight());
+		double together = 0;
+		double independent = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			long start = System.nanoTime();
+			new ReplicaEnsemble(config.with("randomSeed", baseSeed), replicas, topology).run(ticks);
+			together = (System.nanoTime() - start) / 1e9;
+
+			start = System.nanoTime();
+			for (int r = 0; r < replicas; r++) {
+				new ReplicaEnsemble(config.with("randomSeed", baseSeed + r), 1, topology).run(ticks);
+			}
+			independent = (System.nanoTime() - start) / 1e9;
+		}
+		System.out.println(String.format(Locale.ROOT, "ensemble    %10.1f replicas/s", replicas / together));
+		System.out.println(String.format(Locale.ROOT, "independent %10.1f replicas/s", replicas / independent));
+		System.out.println(String.format(Locale.ROOT, "speedup     %10.2f", independent / together));
+	}
+
+	/**
+	 * Command line entry point: [benchmark] replicas ticks [name=value ...]. Prints the
+	 * ensemble mean and 95% confidence half width of every series, one line per tick,
+	 * or with benchmark the timings of benchmark().
+	 *
+	 * @param args Arguments
+	 */
+	public static void main(String[] args) {
+		boolean benchmark = args.length > 0 && args[0].equals("benchmark");
+		int first = benchmark ? 1 : 0;
+		if (args.length < first + 2) {
+			System.err.println("Usage: ReplicaEnsemble [benchmark] replicas ticks [name=value ...]");
+			System.exit(1);
+		}
+		ModelConfiguration config = ModelConfiguration.defaults();
+		for (int i = first + 2; i < args.length; i++) {
+			String[] pair = args[i].split("=", 2);
+			config = config.withParsed(pair[0], pair[1]);
+		}
+		int replicas = Integer.parseInt(args[first]);
+		int ticks = Integer.parseInt(args[first + 1]);
+		if (benchmark) {
+			benchmark(config, replicas, ticks);
+			return;
+		}
+
+		long start = System.nanoTime();
+		RunResult[] results = new ReplicaEnsemble(config, replicas).run(ticks);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		EnsembleSummary summary = new EnsembleSummary(results);
+
+		StringBuilder header = new StringBuilder("tick");
+		for (String name : RunResult.SERIES_NAMES) {
+			header.append(',').append(name).append("_mean,").append(name).append("_ci95");
+		}
+		System.out.println(header);
+		for (int t = 0; t < ticks; t++) {
+			StringBuilder line = new StringBuilder().append(t + 1);
+			for (int s = 0; s < RunResult.SERIES_NAMES.length; s++) {
+				line.append(String.format(Locale.ROOT, ",%.6f,%.6f", summary.getMean(s, t), summary.getConfidence(s, t)));
+			}
+			System.out.println(line);
+		}
+		System.err.println(String.format(Locale.ROOT, "%d replicas x %d ticks in %.3f s (%.1f replicas/s)",
+				replicas, ticks, seconds, replicas / seconds));
+	}
+
+}
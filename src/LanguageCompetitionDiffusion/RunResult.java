@@ -0,0 +1,68 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Outputs of a single run: the aggregate series recorded at every tick and the
+ * final language of every cell.
+ */
+public class RunResult {
+
+	public static final int SPEAKERS_X = 0;
+	public static final int SPEAKERS_Y = 1;
+	public static final int SPEAKERS_XY = 2;
+	public static final int MEAN_SIMILARITY = 3;
+
+	/**
+	 * Series names, indexed by series id.
+	 */
+	public static final String[] SERIES_NAMES = { "speakersX", "speakersY", "speakersXY", "meanSimilarity" };
+
+	private final long seed;
+	private final double[][] series;
+	private final byte[] finalLanguages;
+
+	/**
+	 * @param seed Random seed of the run
+	 * @param series Series values indexed by series id and tick
+	 * @param finalLanguages Language of every cell at the end of the run
+	 */
+	public RunResult(long seed, double[][] series, byte[] finalLanguages) {
+		if (series.length != SERIES_NAMES.length) {
+			throw new IllegalArgumentException("Expected " + SERIES_NAMES.length + " series.");
+		}
+		this.seed = seed;
+		this.series = series;
+		this.finalLanguages = finalLanguages;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return number of recorded ticks
+	 */
+	public int getTicks() {
+		return series[0].length;
+	}
+
+	public double getValue(int seriesId, int tick) {
+		return series[seriesId][tick];
+	}
+
+	public double[] getSeries(int seriesId) {
+		return series[seriesId].clone();
+	}
+
+	/**
+	 * @param seriesId Series id
+	 * @return value at the last recorded tick
+	 */
+	public double getFinalValue(int seriesId) {
+		return series[seriesId][getTicks() - 1];
+	}
+
+	public byte[] getFinalLanguages() {
+		return finalLanguages.clone();
+	}
+
+}
@@ -0,0 +1,315 @@
+package LanguageCompetitionDiffusion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent local cache of ensemble results, so that parameter points which have
+ * already been simulated are not run again across analysis iterations or sweeps.
+ *
+ * Entries are addressed by a SHA-256 hash of a canonical description of the run: the
+ * model version (see MODEL_VERSION), every parameter value affecting the run sorted by name (including
+ * randomSeed), the number of replicas and ticks, and the recorded series. Each entry
+ * is a gzipped file in the cache directory. When the directory grows past maxBytes
+ * the least recently used entries are deleted, the file modification time is used as
+ * access time so the order survives restarts.
+ *
+ * Runs without a randomSeed are not reproducible and are never cached.
+ */
+public class RunResultCache {
+
+	/**
+	 * Classes whose code determines the cached results: the ensemble engine and
+	 * everything it reads its dynamics and defaults from.
+	 */
+	private static final Class<?>[] MODEL_CLASSES = { ReplicaEnsemble.class, TransitionRules.class,
+			TorusNeighborhood.class, ModelConfiguration.class, RunResult.class };
+
+	/**
+	 * Version of the model dynamics, derived from the build: a hash of the class files of
+	 * MODEL_CLASSES. Any rebuild changing the engines gets a new version, which
+	 * invalidates all cached entries. Null if a class file cannot be read, nothing is
+	 * cached then.
+	 */
+	public static final String MODEL_VERSION = modelVersion();
+
+	/**
+	 * Parameters which only control displays and outputs, not the simulated dynamics.
+	 * They are left out of the key so that changing them does not invalidate entries.
+	 */
+	private static final Set<String> OUTPUT_PARAMETERS = new HashSet<String>(
+			Arrays.asList("snapshotInterval", "frameRate", "analysisInterval", "changeFeedPort", "changeFeedFile"));
+
+	private static final int MAGIC = 0x4c434452; // "LCDR"
+	private static final int FORMAT = 1;
+	private static final String SUFFIX = ".run";
+
+	private final File directory;
+	private final long maxBytes;
+	// entry sizes in access order, least recently used first
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long totalBytes;
+
+	/**
+	 * @param directory Cache directory, created if missing
+	 * @param maxBytes Maximum total size of the cached entries
+	 */
+	public RunResultCache(File directory, long maxBytes) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+
+		File[] files = directory.listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.valueOf(a.lastModified()).compareTo(b.lastModified());
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(SUFFIX)) {
+				entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+				totalBytes += file.length();
+			}
+		}
+	}
+
+	/**
+	 * Computes the cache key of a run.
+	 *
+	 * @param config Model configuration
+	 * @param replicas Number of replicas
+	 * @param ticks Number of ticks
+	 * @return hex encoded key, or null if the configuration has no randomSeed
+	 */
+	public static String key(ModelConfiguration config, int replicas, int ticks) {
+		if (config.getValue("randomSeed") == null || MODEL_VERSION == null) {
+			return null;
+		}
+		StringBuilder canonical = new StringBuilder();
+		canonical.append("model=").append(MODEL_VERSION).append('\n');
+		for (Map.Entry<String, Object> entry : config.getValues().entrySet()) {
+			if (OUTPUT_PARAMETERS.contains(entry.getKey())) {
+				continue;
+			}
+			canonical.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		}
+		canonical.append("replicas=").append(replicas).append('\n');
+		canonical.append("ticks=").append(ticks).append('\n');
+		canonical.append("series=").append(Arrays.toString(RunResult.SERIES_NAMES)).append('\n');
+		try {
+			return hex(sha256().digest(canonical.toString().getBytes("UTF-8")));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not available.", e);
+		}
+	}
+
+	private static String modelVersion() {
+		MessageDigest digest = sha256();
+		byte[] buffer = new byte[8192];
+		for (Class<?> type : MODEL_CLASSES) {
+			InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class");
+			if (in == null) {
+				return null;
+			}
+			try {
+				try {
+					int read;
+					while ((read = in.read(buffer)) > 0) {
+						digest.update(buffer, 0, read);
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+			catch (IOException e) {
+				return null;
+			}
+		}
+		return hex(digest.digest()).substring(0, 16);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Returns the cached results of a run.
+	 *
+	 * @param key Cache key
+	 * @return results per replica, or null if the run is not cached
+	 */
+	public synchronized RunResult[] get(String key) {
+		// get() also marks the entry as most recently used
+		if (key == null || entries.get(key) == null) {
+			return null;
+		}
+		File file = file(key);
+		try {
+			RunResult[] results = read(file);
+			file.setLastModified(System.currentTimeMillis());
+			return results;
+		}
+		catch (IOException e) {
+			// unreadable entry, drop it and let the caller rerun
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether a run is cached, without marking it as used.
+	 *
+	 * @param key Cache key
+	 * @return true if the run is cached
+	 */
+	public synchronized boolean contains(String key) {
+		return key != null && entries.containsKey(key);
+	}
+
+	/**
+	 * Stores the results of a run and evicts least recently used entries if needed.
+	 *
+	 * @param key Cache key, ignored if null
+	 * @param results Results per replica
+	 * @throws IOException if the entry cannot be written
+	 */
+	public synchronized void put(String key, RunResult[] results) throws IOException {
+		if (key == null) {
+			return;
+		}
+		File temporary = new File(directory, key + ".tmp");
+		write(temporary, results);
+		File file = file(key);
+		if (file.exists()) {
+			remove(key);
+		}
+		if (!temporary.renameTo(file)) {
+			temporary.delete();
+			throw new IOException("Cannot move cache entry to " + file);
+		}
+		entries.put(key, file.length());
+		totalBytes += file.length();
+
+		Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			if (entry.getKey().equals(key)) {
+				continue;
+			}
+			file(entry.getKey()).delete();
+			totalBytes -= entry.getValue();
+			eldest.remove();
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	private void remove(String key) {
+		Long size = entries.remove(key);
+		if (size != null) {
+			totalBytes -= size;
+		}
+		file(key).delete();
+	}
+
+	private File file(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	private static void write(File file, RunResult[] results) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file))));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeInt(results.length);
+			for (RunResult result : results) {
+				out.writeLong(result.getSeed());
+				out.writeInt(result.getTicks());
+				for (int s = 0; s < RunResult.SERIES_NAMES.length; s++) {
+					for (int t = 0; t < result.getTicks(); t++) {
+						out.writeDouble(result.getValue(s, t));
+					}
+				}
+				byte[] languages = result.getFinalLanguages();
+				out.writeInt(languages.length);
+				out.write(languages);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static RunResult[] read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file))));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+				throw new IOException("Not a cache entry: " + file);
+			}
+			RunResult[] results = new RunResult[in.readInt()];
+			for (int r = 0; r < results.length; r++) {
+				long seed = in.readLong();
+				int ticks = in.readInt();
+				double[][] series = new double[RunResult.SERIES_NAMES.length][ticks];
+				for (int s = 0; s < series.length; s++) {
+					for (int t = 0; t < ticks; t++) {
+						series[s][t] = in.readDouble();
+					}
+				}
+				byte[] languages = new byte[in.readInt()];
+				in.readFully(languages);
+				results[r] = new RunResult(seed, series, languages);
+			}
+			return results;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,236 @@
+package LanguageCompetitionDiffusion;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import repast.simphony.engine.environment.RunEnvironment;
+import repast.simphony.engine.environment.RunState;
+import repast.simphony.engine.schedule.ScheduleParameters;
+import repast.simphony.engine.schedule.ScheduledMethod;
+import repast.simphony.visualization.IDisplay;
+
+/**
+ * Decouples the displays from the tick loop. Every snapshotInterval ticks the simulation
+ * thread only copies the language and similarity of each cell into an immutable
+ * GridSnapshot. A background thread picks up the latest snapshot at the configured
+ * frame rate, turns it into a Frame of precomputed colours and redraws the displays,
+ * whose styles read the frame without touching live agents or allocating colours.
+ * The displays are only drawn once by the schedule (ONE_TIME in the display
+ * descriptors), every later redraw comes from this renderer.
+ *
+ * Snapshots that are not rendered before the next one is published are dropped, so a
+ * slow display never holds back the simulation. Nothing is captured in batch runs or
+ * while no display is open, and each frame redraws the displays open at its capture.
+ *
+ * With a population engine there are no agents on the grid. The snapshots then show
+ * the composition of the population, see GridSnapshot.composition(), and the value
+ * layer is drawn in the language colours.
+ */
+public class SnapshotRenderer {
+
+	private final int width;
+	private final int height;
+	private final Agent[] agents;
+	private final NeighborhoodCell[] cells;
+	private final MeanFieldEngine population;
+	private final int snapshotInterval;
+	private final int frameRate;
+	private final AtomicReference<GridSnapshot> pending = new AtomicReference<GridSnapshot>();
+	private volatile Frame frame;
+	// displays open at the last capture, read by the background thread
+	private volatile List<IDisplay> displays = new ArrayList<IDisplay>();
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param agents Agents indexed by cell (y * width + x), null for empty cells
+	 * @param cells Neighborhood cells indexed by cell
+	 * @param snapshotInterval Number of ticks between two snapshots
+	 * @param frameRate Target number of rendered frames per second
+	 */
+	public SnapshotRenderer(int width, int height, Agent[] agents, NeighborhoodCell[] cells,
+			int snapshotInterval, int frameRate) {
+		this(width, height, agents, cells, null, snapshotInterval, frameRate);
+	}
+
+	/**
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param population Population engine simulating the model
+	 * @param snapshotInterval Number of ticks between two snapshots
+	 * @param frameRate Target number of rendered frames per second
+	 */
+	public SnapshotRenderer(int width, int height, MeanFieldEngine population,
+			int snapshotInterval, int frameRate) {
+		this(width, height, null, null, population, snapshotInterval, frameRate);
+	}
+
+	private SnapshotRenderer(int width, int height, Agent[] agents, NeighborhoodCell[] cells,
+			MeanFieldEngine population, int snapshotInterval, int frameRate) {
+		if (snapshotInterval < 1 || frameRate < 1) {
+			throw new IllegalArgumentException("Snapshot interval and frame rate must be positive.");
+		}
+		this.width = width;
+		this.height = height;
+		this.agents = agents;
+		this.cells = cells;
+		this.population = population;
+		this.snapshotInterval = snapshotInterval;
+		this.frameRate = frameRate;
+	}
+
+	/**
+	 * Runs after the agents and the neighborhood layer have been updated.
+	 * Only copies primitive state, rendering happens on the background thread.
+	 */
+	@ScheduledMethod(start = 0, interval = 1, priority = -2)
+	public void captureSnapshot() {
+		// nobody draws in batch runs or without displays, skip the copy
+		if (RunEnvironment.getInstance().isBatch()) {
+			return;
+		}
+		// displays may be opened and closed during the run, look them up at every capture
+		final List<IDisplay> open = RunState.getInstance().getGUIRegistry().getDisplays();
+		if (open.isEmpty()) {
+			return;
+		}
+		double tick = RunEnvironment.getInstance().getCurrentSchedule().getTickCount();
+		if (((long) tick) % snapshotInterval != 0) {
+			return;
+		}
+		displays = new ArrayList<IDisplay>(open);
+		if (population != null) {
+			pending.set(GridSnapshot.composition(tick, width, height,
+					population.getSpeakersX(), population.getSpeakersY(), population.getSpeakersXY()));
+		}
+		else {
+			pending.set(GridSnapshot.capture(tick, width, height, agents, cells));
+		}
+		if (executor == null) {
+			start();
+		}
+	}
+
+	/**
+	 * Returns the most recently rendered frame, rendering a pending snapshot on the
+	 * calling thread if the background renderer is not running. May return null before
+	 * the first snapshot has been captured.
+	 *
+	 * @return frame
+	 */
+	public Frame getFrame() {
+		if (executor == null) {
+			renderFrame();
+		}
+		return frame;
+	}
+
+	private synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SnapshotRenderer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				renderFrame();
+			}
+		}, 0, 1000000L / frameRate, TimeUnit.MICROSECONDS);
+		RunEnvironment.getInstance().getCurrentSchedule().schedule(
+				ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY), this, "stop");
+	}
+
+	/**
+	 * Stops the background renderer at the end of the run.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private void renderFrame() {
+		final GridSnapshot snapshot = pending.getAndSet(null);
+		if (snapshot == null) {
+			return;
+		}
+		final Color[] similarityColors = new Color[snapshot.size()];
+		final Color[] languageColors = new Color[snapshot.size()];
+		for (int i = 0; i < similarityColors.length; i++) {
+			languageColors[i] = RenderPalette.languageColor(snapshot.getLanguage(i));
+			// no agents to draw with a population engine, the layer shows the languages
+			similarityColors[i] = (population != null && languageColors[i] != null)
+					? languageColors[i] : RenderPalette.similarityColor(snapshot.getSimilarity(i));
+		}
+		frame = new Frame(snapshot, similarityColors, languageColors);
+
+		if (executor != null) {
+			for (IDisplay display : displays) {
+				display.update();
+				display.render();
+			}
+		}
+	}
+
+	/**
+	 * Looks up the renderer of the current run.
+	 *
+	 * @return renderer, or null if the model has none
+	 */
+	public static SnapshotRenderer find() {
+		@SuppressWarnings("unchecked")
+		final Iterable<SnapshotRenderer> renderers = RunState.getInstance().getMasterContext()
+				.getObjects(SnapshotRenderer.class);
+		for (final SnapshotRenderer renderer : renderers) {
+			return renderer;
+		}
+		return null;
+	}
+
+	/**
+	 * A rendered frame: the snapshot it was built from and the layer and agent colour
+	 * of each cell.
+	 */
+	public static class Frame {
+
+		private final GridSnapshot snapshot;
+		private final Color[] similarityColors;
+		private final Color[] languageColors;
+
+		Frame(GridSnapshot snapshot, Color[] similarityColors, Color[] languageColors) {
+			this.snapshot = snapshot;
+			this.similarityColors = similarityColors;
+			this.languageColors = languageColors;
+		}
+
+		public GridSnapshot getSnapshot() {
+			return snapshot;
+		}
+
+		public Color getSimilarityColor(int x, int y) {
+			return similarityColors[y * snapshot.getWidth() + x];
+		}
+
+		/**
+		 * @param cell Cell index, y * width + x
+		 * @return colour of the language spoken in the cell
+		 */
+		public Color getLanguageColor(int cell) {
+			return languageColors[cell];
+		}
+	}
+
+}
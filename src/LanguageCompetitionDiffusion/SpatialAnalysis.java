@@ -0,0 +1,208 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Spatial observables of a grid snapshot, all computed on the torus:
+ *
+ * - pair correlation of each language versus distance, from the autocorrelation of
+ *   the language indicator field computed with FFTs (Wiener-Khinchin), normalized to
+ *   1 at distance 0 and 0 for uncorrelated cells;
+ * - density of X-Y, X-XY and Y-XY interface edges, as a share of all edges between
+ *   horizontally or vertically adjacent cells (the coarsening rate is its decay);
+ * - radially averaged power spectrum of the cultural trait field, averaged over the
+ *   features other than language.
+ */
+public class SpatialAnalysis {
+
+	private final double tick;
+	private final double[][] correlations;
+	private final double[] interfaceDensities;
+	private final double[] spectrum;
+
+	private SpatialAnalysis(double tick, double[][] correlations, double[] interfaceDensities, double[] spectrum) {
+		this.tick = tick;
+		this.correlations = correlations;
+		this.interfaceDensities = interfaceDensities;
+		this.spectrum = spectrum;
+	}
+
+	/**
+	 * Computes all observables of a snapshot.
+	 *
+	 * @param snapshot Grid snapshot, traits are optional
+	 * @return analysis
+	 */
+	public static SpatialAnalysis analyze(GridSnapshot snapshot) {
+		int width = snapshot.getWidth();
+		int height = snapshot.getHeight();
+		int cells = snapshot.size();
+		int bins = Math.min(width, height) / 2 + 1;
+
+		// pair correlation per language
+		double[][] correlations = new double[3][];
+		for (int language = 1; language <= 3; language++) {
+			double[] re = new double[cells];
+			double[] im = new double[cells];
+			double density = 0;
+			for (int i = 0; i < cells; i++) {
+				if (snapshot.getLanguage(i) == language) {
+					re[i] = 1;
+					density++;
+				}
+			}
+			density /= cells;
+			double[] autocorrelation = autocorrelation(re, im, width, height);
+			double[] radial = radialAverage(autocorrelation, width, height, bins, false);
+			double variance = density - density * density;
+			for (int r = 0; r < bins; r++) {
+				radial[r] = variance > 0 ? (radial[r] - density * density) / variance : 0;
+			}
+			correlations[language - 1] = radial;
+		}
+
+		// interface edges, each cell counts its right and bottom edges
+		int[] interfaces = new int[3];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int language = snapshot.getLanguage(x, y);
+				countInterface(interfaces, language, snapshot.getLanguage((x + 1) % width, y));
+				countInterface(interfaces, language, snapshot.getLanguage(x, (y + 1) % height));
+			}
+		}
+		double[] interfaceDensities = new double[3];
+		for (int k = 0; k < 3; k++) {
+			interfaceDensities[k] = (double) interfaces[k] / (2 * cells);
+		}
+
+		// trait power spectrum
+		double[] spectrum = new double[bins];
+		int features = snapshot.getNumFeatures();
+		if (features > 1) {
+			for (int f = 1; f < features; f++) {
+				double[] re = new double[cells];
+				double[] im = new double[cells];
+				double mean = 0;
+				for (int i = 0; i < cells; i++) {
+					re[i] = snapshot.getTrait(i, f);
+					mean += re[i];
+				}
+				mean /= cells;
+				for (int i = 0; i < cells; i++) {
+					re[i] -= mean;
+				}
+				Fft.transform2D(re, im, width, height, false);
+				double[] power = new double[cells];
+				for (int i = 0; i < cells; i++) {
+					power[i] = (re[i] * re[i] + im[i] * im[i]) / cells;
+				}
+				double[] radial = radialAverage(power, width, height, bins, true);
+				for (int k = 0; k < bins; k++) {
+					spectrum[k] += radial[k] / (features - 1);
+				}
+			}
+		}
+
+		return new SpatialAnalysis(snapshot.getTick(), correlations, interfaceDensities, spectrum);
+	}
+
+	/**
+	 * Circular autocorrelation, mean of field[i] * field[i + d] for every displacement d.
+	 * The input arrays are overwritten.
+	 */
+	private static double[] autocorrelation(double[] re, double[] im, int width, int height) {
+		int cells = width * height;
+		Fft.transform2D(re, im, width, height, false);
+		for (int i = 0; i < cells; i++) {
+			re[i] = re[i] * re[i] + im[i] * im[i];
+			im[i] = 0;
+		}
+		Fft.transform2D(re, im, width, height, true);
+		for (int i = 0; i < cells; i++) {
+			re[i] /= (double) cells * cells;
+		}
+		return re;
+	}
+
+	/**
+	 * Averages a field over rings of the shortest torus displacement (or of the
+	 * wave number, for spectra) rounded to the nearest integer.
+	 */
+	private static double[] radialAverage(double[] field, int width, int height, int bins, boolean frequencies) {
+		double[] sums = new double[bins];
+		int[] counts = new int[bins];
+		int size = Math.min(width, height);
+		for (int y = 0; y < height; y++) {
+			int dy = Math.min(y, height - y);
+			for (int x = 0; x < width; x++) {
+				int dx = Math.min(x, width - x);
+				double radius = frequencies
+						? Math.sqrt((double) dx * dx / ((double) width * width) + (double) dy * dy / ((double) height * height)) * size
+						: Math.sqrt(dx * dx + dy * dy);
+				int bin = (int) Math.round(radius);
+				if (bin < bins) {
+					sums[bin] += field[y * width + x];
+					counts[bin]++;
+				}
+			}
+		}
+		for (int bin = 0; bin < bins; bin++) {
+			sums[bin] = counts[bin] > 0 ? sums[bin] / counts[bin] : 0;
+		}
+		return sums;
+	}
+
+	private static void countInterface(int[] interfaces, int a, int b) {
+		if (a == b || a == 0 || b == 0) {
+			return;
+		}
+		if (a + b == 3) {
+			interfaces[0]++; // X-Y
+		}
+		else if (a == 1 || b == 1) {
+			interfaces[1]++; // X-XY
+		}
+		else {
+			interfaces[2]++; // Y-XY
+		}
+	}
+
+	public double getTick() {
+		return tick;
+	}
+
+	/**
+	 * @param language Language id, 1 to 3
+	 * @return correlation indexed by distance in cells
+	 */
+	public double[] getCorrelation(int language) {
+		return correlations[language - 1].clone();
+	}
+
+	/**
+	 * @return share of edges between X and Y speakers
+	 */
+	public double getInterfaceDensityXY() {
+		return interfaceDensities[0];
+	}
+
+	/**
+	 * @return share of edges between X and bilingual speakers
+	 */
+	public double getInterfaceDensityXtoXY() {
+		return interfaceDensities[1];
+	}
+
+	/**
+	 * @return share of edges between Y and bilingual speakers
+	 */
+	public double getInterfaceDensityYtoXY() {
+		return interfaceDensities[2];
+	}
+
+	/**
+	 * @return trait power spectrum indexed by wave number, all zero without traits
+	 */
+	public double[] getSpectrum() {
+		return spectrum.clone();
+	}
+
+}
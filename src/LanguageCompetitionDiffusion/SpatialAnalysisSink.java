@@ -0,0 +1,60 @@
+package LanguageCompetitionDiffusion;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes spatial analyses as CSV rows tagged by tick: tick, observable, index, value.
+ * Correlations are indexed by distance, spectra by wave number, interface densities
+ * have index 0.
+ */
+public class SpatialAnalysisSink {
+
+	private final Writer writer;
+
+	public SpatialAnalysisSink(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		this.writer = new BufferedWriter(new FileWriter(file));
+		writer.write("tick,observable,index,value\n");
+	}
+
+	/**
+	 * Appends all observables of an analysis.
+	 *
+	 * @param analysis Analysis
+	 * @throws IOException if the rows cannot be written
+	 */
+	public synchronized void write(SpatialAnalysis analysis) throws IOException {
+		double tick = analysis.getTick();
+		writeSeries(tick, "correlationX", analysis.getCorrelation(1));
+		writeSeries(tick, "correlationY", analysis.getCorrelation(2));
+		writeSeries(tick, "correlationXY", analysis.getCorrelation(3));
+		writeRow(tick, "interfaceX-Y", 0, analysis.getInterfaceDensityXY());
+		writeRow(tick, "interfaceX-XY", 0, analysis.getInterfaceDensityXtoXY());
+		writeRow(tick, "interfaceY-XY", 0, analysis.getInterfaceDensityYtoXY());
+		writeSeries(tick, "traitSpectrum", analysis.getSpectrum());
+		writer.flush();
+	}
+
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	private void writeSeries(double tick, String observable, double[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			writeRow(tick, observable, i, values[i]);
+		}
+	}
+
+	private void writeRow(double tick, String observable, int index, double value) throws IOException {
+		writer.write(String.format(Locale.ROOT, "%s,%s,%d,%.8g\n", tick, observable, index, value));
+	}
+
+}
@@ -0,0 +1,133 @@
+package LanguageCompetitionDiffusion;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import repast.simphony.engine.environment.RunEnvironment;
+import repast.simphony.engine.schedule.ScheduleParameters;
+import repast.simphony.engine.schedule.ScheduledMethod;
+
+/**
+ * Runs SpatialAnalysis on a background thread. Every analysisInterval ticks the
+ * simulation thread only copies the grid state into a GridSnapshot and hands it over;
+ * it never waits for the analysis. If the previous snapshot has not been picked up
+ * yet it is replaced by the new one (coalesced), so a slow analysis makes the output
+ * sparser instead of stalling the run.
+ */
+public class SpatialAnalyzer {
+
+	private final int width;
+	private final int height;
+	private final int numFeatures;
+	private final Agent[] agents;
+	private final NeighborhoodCell[] cells;
+	private final int analysisInterval;
+	private final SpatialAnalysisSink sink;
+	private final AtomicReference<GridSnapshot> pending = new AtomicReference<GridSnapshot>();
+	private final AtomicInteger analyzed = new AtomicInteger();
+	private final AtomicInteger dropped = new AtomicInteger();
+	private final ExecutorService executor;
+	private final Runnable analysis = new Runnable() {
+		public void run() {
+			GridSnapshot snapshot = pending.getAndSet(null);
+			if (snapshot == null) {
+				return;
+			}
+			try {
+				sink.write(SpatialAnalysis.analyze(snapshot));
+				analyzed.incrementAndGet();
+			}
+			catch (IOException e) {
+				System.err.println("Spatial analysis output failed at tick " + snapshot.getTick() + ": " + e);
+			}
+		}
+	};
+
+	/**
+	 * @param width Grid width
+	 * @param height Grid height
+	 * @param numFeatures Number of cultural features
+	 * @param agents Agents indexed by cell (y * width + x), null for empty cells
+	 * @param cells Neighborhood cells indexed by cell
+	 * @param analysisInterval Number of ticks between two snapshots
+	 * @param sink Output of the analyses
+	 */
+	public SpatialAnalyzer(int width, int height, int numFeatures, Agent[] agents, NeighborhoodCell[] cells,
+			int analysisInterval, SpatialAnalysisSink sink) {
+		if (analysisInterval < 1) {
+			throw new IllegalArgumentException("Analysis interval must be positive.");
+		}
+		this.width = width;
+		this.height = height;
+		this.numFeatures = numFeatures;
+		this.agents = agents;
+		this.cells = cells;
+		this.analysisInterval = analysisInterval;
+		this.sink = sink;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SpatialAnalyzer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		RunEnvironment.getInstance().getCurrentSchedule().schedule(
+				ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY), this, "stop");
+	}
+
+	/**
+	 * Runs after the agents and the neighborhood layer have been updated.
+	 */
+	@ScheduledMethod(start = 0, interval = 1, priority = -2)
+	public void captureSnapshot() {
+		double tick = RunEnvironment.getInstance().getCurrentSchedule().getTickCount();
+		if (((long) tick) % analysisInterval != 0) {
+			return;
+		}
+		GridSnapshot snapshot = GridSnapshot.captureWithTraits(tick, width, height, numFeatures, agents, cells);
+		if (pending.getAndSet(snapshot) != null) {
+			// the previous snapshot was never analyzed, it is replaced by this one
+			dropped.incrementAndGet();
+		}
+		else {
+			executor.execute(analysis);
+		}
+	}
+
+	/**
+	 * Finishes the pending analysis and closes the output at the end of the run.
+	 */
+	public void stop() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(30, TimeUnit.SECONDS);
+			sink.close();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			System.err.println("Cannot close spatial analysis output: " + e);
+		}
+	}
+
+	/**
+	 * @return number of snapshots analyzed so far
+	 */
+	public int getAnalyzed() {
+		return analyzed.get();
+	}
+
+	/**
+	 * @return number of snapshots replaced before they could be analyzed
+	 */
+	public int getDropped() {
+		return dropped.get();
+	}
+
+}
@@ -0,0 +1,145 @@
+package LanguageCompetitionDiffusion;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of parameter points, each as a ReplicaEnsemble, on a fixed pool of
+ * threads. Before a point is scheduled the result cache is consulted, so only points
+ * which have not been simulated yet are computed.
+ */
+public class SweepRunner {
+
+	private final RunResultCache cache;
+	private final int replicas;
+	private final int ticks;
+	private final int threads;
+	private final Map<String, TorusNeighborhood> topologies = new HashMap<String, TorusNeighborhood>();
+	private final AtomicInteger cacheHits = new AtomicInteger();
+	private final AtomicInteger runs = new AtomicInteger();
+
+	/**
+	 * @param cache Result cache, or null to always run
+	 * @param replicas Number of replicas per point
+	 * @param ticks Number of ticks per run
+	 * @param threads Number of points simulated in parallel
+	 */
+	public SweepRunner(RunResultCache cache, int replicas, int ticks, int threads) {
+		if (replicas < 1 || ticks < 1 || threads < 1) {
+			throw new IllegalArgumentException("Replicas, ticks and threads must be positive.");
+		}
+		this.cache = cache;
+		this.replicas = replicas;
+		this.ticks = ticks;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs all points and waits for their results.
+	 *
+	 * @param points Parameter points
+	 * @return results per replica, in the order of the points
+	 */
+	public List<RunResult[]> run(List<ModelConfiguration> points) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<RunResult[]>> futures = new ArrayList<Future<RunResult[]>>();
+			for (final ModelConfiguration point : points) {
+				futures.add(executor.submit(new Callable<RunResult[]>() {
+					public RunResult[] call() throws IOException {
+						return run(point);
+					}
+				}));
+			}
+			List<RunResult[]> results = new ArrayList<RunResult[]>();
+			for (Future<RunResult[]> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Sweep interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Sweep run failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs a single point, or returns it from the cache.
+	 *
+	 * @param point Parameter point
+	 * @return results per replica
+	 * @throws IOException if the results cannot be stored in the cache
+	 */
+	public RunResult[] run(ModelConfiguration point) throws IOException {
+		String key = (cache != null) ? RunResultCache.key(point, replicas, ticks) : null;
+		if (key != null) {
+			RunResult[] cached = cache.get(key);
+			if (cached != null) {
+				cacheHits.incrementAndGet();
+				return cached;
+			}
+		}
+		RunResult[] results = new ReplicaEnsemble(point, replicas, topology(point)).run(ticks);
+		runs.incrementAndGet();
+		if (key != null) {
+			cache.put(key, results);
+		}
+		return results;
+	}
+
+	/**
+	 * @param point Parameter point
+	 * @return true if run(point) would be answered from the cache
+	 */
+	public boolean isCached(ModelConfiguration point) {
+		return cache != null && cache.contains(RunResultCache.key(point, replicas, ticks));
+	}
+
+	private synchronized TorusNeighborhood topology(ModelConfiguration point) {
+		String size = point.getWidth() + "x" + point.getHeight();
+		TorusNeighborhood topology = topologies.get(size);
+		if (topology == null) {
+			topology = new TorusNeighborhood(point.getWidth(), point.getHeight());
+			topologies.put(size, topology);
+		}
+		return topology;
+	}
+
+	/**
+	 * @return number of points answered from the cache
+	 */
+	public int getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * @return number of points simulated
+	 */
+	public int getRuns() {
+		return runs.get();
+	}
+
+	public int getReplicas() {
+		return replicas;
+	}
+
+	public int getTicks() {
+		return ticks;
+	}
+
+}
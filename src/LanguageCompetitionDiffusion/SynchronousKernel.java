@@ -0,0 +1,319 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import cern.jet.random.engine.MersenneTwister;
+import cern.jet.random.engine.RandomEngine;
+
+/**
+ * Synchronous whole-grid language update: every cell picks its next language from
+ * the X/Y counts of its Moore neighborhood in the previous state, with the transition
+ * rules of Agent.imitate(). Cultural features are not simulated, the share of cells
+ * which interact in a tick is given by interactionProbability. Only the local Moore
+ * neighborhood is simulated, the fully connected neighborhood (neighborhoodType 2) is
+ * rejected, see MeanFieldEngine for that case.
+ *
+ * The vertical/horizontal draw and the roulette wheel of imitate() are folded into
+ * one uniform draw per cell: for every language and every pair of neighbor counts the
+ * combined probabilities of moving to X and to Y are tabulated once, and a cell moves
+ * to X if u is below the first threshold, to Y if below the second one, else to XY.
+ *
+ * Two implementations are available and give identical results for the same seed:
+ *
+ * - ROWS processes the grid row by row on primitive int arrays padded with halo
+ *   columns, so the neighbor counts are sums of shifted rows and the update is a
+ *   table lookup and two comparisons, without branches, modulo or neighbor table.
+ *   Only the vertical row sums are plain element-wise loops that the JIT compiler
+ *   may vectorize, the update loop indexes the tables with computed offsets and runs
+ *   scalar.
+ * - SCALAR steps cell by cell, counting the neighbors through the neighbor table,
+ *   and looks up the same thresholds, so both differ only in the row blocking.
+ *
+ * ROWS measured about 1.5 times faster than SCALAR (HotSpot C2, 256 x 256 and
+ * 512 x 512 grids, see main()), the per cell random draw is shared by both. The
+ * implementation is chosen at runtime, see create().
+ */
+public class SynchronousKernel {
+
+	public static final int SCALAR = 0;
+	public static final int ROWS = 1;
+
+	/**
+	 * System property selecting the implementation used by create(): "scalar" or "rows".
+	 */
+	public static final String KERNEL_PROPERTY = "lcd.kernel";
+
+	private static final int X = 1;
+	private static final int Y = 2;
+	private static final int XY = 3;
+	private static final int COUNTS = TorusNeighborhood.SIZE + 1;
+
+	private final int implementation;
+	private final int width;
+	private final int height;
+	private final TorusNeighborhood topology;
+	private final TransitionRules rules;
+	private final double interactionProbability;
+	private final RandomEngine random;
+	// thresholds indexed by (language * COUNTS + countX) * COUNTS + countY
+	private final double[] toX = new double[4 * COUNTS * COUNTS];
+	private final double[] toXorY = new double[4 * COUNTS * COUNTS];
+
+	private int[] languages;
+	private int[] next;
+	private final double[] uniforms;
+	// ROWS buffers, rows padded with one halo column on each side
+	private final int[] isX;
+	private final int[] isY;
+	private final int[] columnX;
+	private final int[] columnY;
+
+	/**
+	 * Builds a kernel with the implementation selected by the lcd.kernel system property,
+	 * ROWS by default.
+	 *
+	 * @param config Model configuration
+	 * @param interactionProbability Share of cells which interact in a tick
+	 * @return kernel
+	 */
+	public static SynchronousKernel create(ModelConfiguration config, double interactionProbability) {
+		String kernel = System.getProperty(KERNEL_PROPERTY, "rows");
+		return new SynchronousKernel(config, "scalar".equalsIgnoreCase(kernel) ? SCALAR : ROWS, interactionProbability);
+	}
+
+	/**
+	 * @param config Model configuration, randomSeed seeds the initial state and the draws
+	 * @param implementation SCALAR or ROWS
+	 * @param interactionProbability Share of cells which interact in a tick
+	 */
+	public SynchronousKernel(ModelConfiguration config, int implementation, double interactionProbability) {
+		if (implementation != SCALAR && implementation != ROWS) {
+			throw new IllegalArgumentException("Unknown kernel implementation: " + implementation);
+		}
+		if (config.getInt("neighborhoodType") == 2) {
+			throw new IllegalArgumentException(
+					"The synchronous kernel only simulates local neighborhoods (neighborhoodType != 2).");
+		}
+		this.implementation = implementation;
+		this.width = config.getWidth();
+		this.height = config.getHeight();
+		this.topology = new TorusNeighborhood(width, height);
+		this.rules = new TransitionRules(config);
+		this.interactionProbability = interactionProbability;
+		Object seed = config.getValue("randomSeed");
+		this.random = new MersenneTwister(seed != null ? ((Number) seed).intValue() : (int) System.nanoTime());
+
+		double[] powers = new double[COUNTS];
+		for (int k = 0; k < COUNTS; k++) {
+			powers[k] = Math.pow((double) k / TorusNeighborhood.SIZE, rules.getVolatility());
+		}
+		double[] thresholds = new double[2];
+		for (int language = X; language <= XY; language++) {
+			for (int countX = 0; countX < COUNTS; countX++) {
+				for (int countY = 0; countY < COUNTS; countY++) {
+					thresholds(language, powers[countX], powers[countY], thresholds);
+					int index = (language * COUNTS + countX) * COUNTS + countY;
+					toX[index] = thresholds[0];
+					toXorY[index] = thresholds[1];
+				}
+			}
+		}
+
+		int cells = width * height;
+		this.languages = new int[cells];
+		this.next = new int[cells];
+		this.uniforms = new double[cells];
+		// same initial population as the model builder
+		int percentX = config.getInt("percentX");
+		int percentY = config.getInt("percentY");
+		if ((percentX > 0 && percentY > 0) && (percentX < 100 && percentY < 100)) {
+			// exact group sizes at random positions
+			int countX = (cells * percentX) / 100;
+			int countY = (cells * percentY) / 100;
+			for (int c = 0; c < cells; c++) {
+				languages[c] = c < countX ? X : (c < countX + countY ? Y : XY);
+			}
+			for (int c = cells - 1; c > 0; c--) {
+				int other = (int) (random.nextDouble() * (c + 1));
+				int swap = languages[c];
+				languages[c] = languages[other];
+				languages[other] = swap;
+			}
+		}
+		else {
+			for (int c = 0; c < cells; c++) {
+				languages[c] = 1 + (int) (random.nextDouble() * 3);
+			}
+		}
+		this.isX = new int[height * (width + 2)];
+		this.isY = new int[height * (width + 2)];
+		this.columnX = new int[width + 2];
+		this.columnY = new int[width + 2];
+	}
+
+	/**
+	 * Cumulative probabilities of moving to X, and to X or Y, for one cell.
+	 */
+	private void thresholds(int language, double xPowA, double yPowA, double[] out) {
+		double vertical = interactionProbability * rules.getVerticalProbability();
+		double horizontal = interactionProbability - vertical;
+		switch (language) {
+			case X:
+				// X -> XY, horizontal model only
+				out[0] = 1 - horizontal * rules.xToXYFromPower(yPowA);
+				out[1] = out[0];
+				break;
+			case Y:
+				// Y -> XY, horizontal model only
+				out[0] = 0;
+				out[1] = 1 - horizontal * rules.yToXYFromPower(xPowA);
+				break;
+			default:
+				// XY -> X or Y, vertical model only
+				out[0] = vertical * rules.xyToXFromPower(xPowA);
+				out[1] = out[0] + vertical * rules.xyToYFromPower(xPowA, yPowA);
+				break;
+		}
+	}
+
+	/**
+	 * Updates every cell once, synchronously.
+	 */
+	public void step() {
+		for (int c = 0; c < uniforms.length; c++) {
+			uniforms[c] = random.nextDouble();
+		}
+		if (implementation == ROWS) {
+			stepRows();
+		}
+		else {
+			stepScalar();
+		}
+		int[] swap = languages;
+		languages = next;
+		next = swap;
+	}
+
+	private void stepScalar() {
+		for (int c = 0; c < languages.length; c++) {
+			int countX = 0;
+			int countY = 0;
+			for (int k = 0; k < TorusNeighborhood.SIZE; k++) {
+				int neighbor = languages[topology.getNeighbor(c, k)];
+				if (neighbor == X) {
+					countX++;
+				}
+				else if (neighbor == Y) {
+					countY++;
+				}
+			}
+			int index = (languages[c] * COUNTS + countX) * COUNTS + countY;
+			double u = uniforms[c];
+			if (u < toX[index]) {
+				next[c] = X;
+			}
+			else if (u < toXorY[index]) {
+				next[c] = Y;
+			}
+			else {
+				next[c] = XY;
+			}
+		}
+	}
+
+	private void stepRows() {
+		final int stride = width + 2;
+		// indicator rows with wrapped halo columns
+		for (int y = 0; y < height; y++) {
+			int row = y * width;
+			int padded = y * stride + 1;
+			for (int x = 0; x < width; x++) {
+				int language = languages[row + x];
+				isX[padded + x] = (language == X) ? 1 : 0;
+				isY[padded + x] = (language == Y) ? 1 : 0;
+			}
+			isX[padded - 1] = isX[padded + width - 1];
+			isY[padded - 1] = isY[padded + width - 1];
+			isX[padded + width] = isX[padded];
+			isY[padded + width] = isY[padded];
+		}
+
+		for (int y = 0; y < height; y++) {
+			int above = ((y + height - 1) % height) * stride;
+			int middle = y * stride;
+			int below = ((y + 1) % height) * stride;
+			// vertical sums of three rows
+			for (int x = 0; x < stride; x++) {
+				columnX[x] = isX[above + x] + isX[middle + x] + isX[below + x];
+				columnY[x] = isY[above + x] + isY[middle + x] + isY[below + x];
+			}
+			int row = y * width;
+			for (int x = 0; x < width; x++) {
+				int countX = columnX[x] + columnX[x + 1] + columnX[x + 2] - isX[middle + x + 1];
+				int countY = columnY[x] + columnY[x + 1] + columnY[x + 2] - isY[middle + x + 1];
+				int index = (languages[row + x] * COUNTS + countX) * COUNTS + countY;
+				double u = uniforms[row + x];
+				next[row + x] = u < toX[index] ? X : (u < toXorY[index] ? Y : XY);
+			}
+		}
+	}
+
+	/**
+	 * @return language of every cell, indexed y * width + x
+	 */
+	public int[] getLanguages() {
+		return languages.clone();
+	}
+
+	/**
+	 * @param language Language id, 1 to 3
+	 * @return number of cells speaking the language
+	 */
+	public int countSpeakers(int language) {
+		int count = 0;
+		for (int value : languages) {
+			if (value == language) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Benchmark: [width height ticks] [name=value ...]. Runs both implementations from the
+	 * same seed, checks that they agree and prints the cells updated per second of each.
+	 *
+	 * @param args Arguments
+	 */
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+		int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		ModelConfiguration config = ModelConfiguration.defaults().with("randomSeed", 1)
+				.with("worldWidth", width).with("worldHeight", height);
+		for (int i = 3; i < args.length; i++) {
+			String[] pair = args[i].split("=", 2);
+			config = config.withParsed(pair[0], pair[1]);
+		}
+
+		int[][] finalStates = new int[2][];
+		for (int implementation = SCALAR; implementation <= ROWS; implementation++) {
+			// first pass warms up the JIT compiler, second pass is measured
+			double seconds = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				SynchronousKernel kernel = new SynchronousKernel(config, implementation, 1.0);
+				long start = System.nanoTime();
+				for (int t = 0; t < ticks; t++) {
+					kernel.step();
+				}
+				seconds = (System.nanoTime() - start) / 1e9;
+				finalStates[implementation] = kernel.getLanguages();
+			}
+			System.out.println(String.format(Locale.ROOT, "%-6s %10.1f Mcells/s",
+					implementation == ROWS ? "rows" : "scalar", (double) width * height * ticks / seconds / 1e6));
+		}
+		System.out.println("identical results: " + Arrays.equals(finalStates[SCALAR], finalStates[ROWS]));
+	}
+
+}
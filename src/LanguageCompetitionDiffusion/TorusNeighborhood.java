@@ -0,0 +1,75 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Read-only Moore neighborhood of every cell of a torroidal grid, the same
+ * wrap-around topology as the model grid. Cells are indexed as y * width + x and
+ * the 8 neighbors of a cell are stored contiguously, so one instance can be shared
+ * by any number of replicas and threads.
+ */
+public final class TorusNeighborhood {
+
+	/**
+	 * Number of neighbors in a Moore neighborhood.
+	 */
+	public static final int SIZE = 8;
+
+	private final int width;
+	private final int height;
+	private final int[] neighbors;
+
+	public TorusNeighborhood(int width, int height) {
+		if (width < 3 || height < 3) {
+			throw new IllegalArgumentException("Grid must be at least 3x3 to have 8 distinct neighbors.");
+		}
+		this.width = width;
+		this.height = height;
+		this.neighbors = new int[width * height * SIZE];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int offset = (y * width + x) * SIZE;
+				int k = 0;
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dx = -1; dx <= 1; dx++) {
+						if (dx != 0 || dy != 0) {
+							int nx = (x + dx + width) % width;
+							int ny = (y + dy + height) % height;
+							neighbors[offset + k++] = ny * width + nx;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getCellCount() {
+		return width * height;
+	}
+
+	/**
+	 * @param cell Cell index
+	 * @param k Neighbor number, 0 to SIZE - 1
+	 * @return cell index of the neighbor
+	 */
+	public int getNeighbor(int cell, int k) {
+		return neighbors[cell * SIZE + k];
+	}
+
+	/**
+	 * Direct access to the neighbor table for inner loops: the neighbors of cell c
+	 * are at offsets c * SIZE to c * SIZE + SIZE - 1. Must not be modified.
+	 *
+	 * @return neighbor table
+	 */
+	int[] getNeighbors() {
+		return neighbors;
+	}
+
+}
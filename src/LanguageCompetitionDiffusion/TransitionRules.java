@@ -0,0 +1,113 @@
+package LanguageCompetitionDiffusion;
+
+/**
+ * Language transition probabilities of the Minett-Wang model, as applied by
+ * Agent.imitate(), for given densities of X and Y speakers.
+ *
+ * Horizontal model: X -> XY with cXtoXY * statusY * densityY^volatility and
+ * Y -> XY with cYtoXY * statusX * densityX^volatility, bilinguals stay bilingual.
+ * Vertical model: XY -> X with cXYtoX * statusX * densityX^volatility and
+ * XY -> Y with cXYtoY * statusY * densityY^volatility, monolinguals keep their language.
+ *
+ * The bilingual probabilities are clamped the same way the roulette wheel resolves
+ * them, X first, then Y, then XY with whatever probability is left.
+ */
+public final class TransitionRules {
+
+	private final double statusX;
+	private final double statusY;
+	private final double volatility;
+	private final double cXYtoX;
+	private final double cXYtoY;
+	private final double cXtoXY;
+	private final double cYtoXY;
+	private final double verticalProbability;
+
+	public TransitionRules(ModelConfiguration config) {
+		this.statusX = config.getStatusX();
+		this.statusY = 1 - statusX;
+		this.volatility = config.getVolatility();
+		this.cXYtoX = config.getDouble("cXYtoX");
+		this.cXYtoY = config.getDouble("cXYtoY");
+		this.cXtoXY = config.getDouble("cXtoXY");
+		this.cYtoXY = config.getDouble("cYtoXY");
+		this.verticalProbability = config.getVerticalProbability();
+	}
+
+	/**
+	 * @return probability that a transmission follows the vertical model
+	 */
+	public double getVerticalProbability() {
+		return verticalProbability;
+	}
+
+	public double getVolatility() {
+		return volatility;
+	}
+
+	/**
+	 * Horizontal model, probability for a speaker of X to become bilingual.
+	 *
+	 * @param densityY Density of Y speakers
+	 * @return probability
+	 */
+	public double xToXY(double densityY) {
+		return xToXYFromPower(Math.pow(densityY, volatility));
+	}
+
+	/**
+	 * Horizontal model, probability for a speaker of Y to become bilingual.
+	 *
+	 * @param densityX Density of X speakers
+	 * @return probability
+	 */
+	public double yToXY(double densityX) {
+		return yToXYFromPower(Math.pow(densityX, volatility));
+	}
+
+	/**
+	 * Vertical model, probability for a bilingual to become a speaker of X.
+	 *
+	 * @param densityX Density of X speakers
+	 * @return probability
+	 */
+	public double xyToX(double densityX) {
+		return xyToXFromPower(Math.pow(densityX, volatility));
+	}
+
+	/**
+	 * Vertical model, probability for a bilingual to become a speaker of Y.
+	 *
+	 * @param densityX Density of X speakers
+	 * @param densityY Density of Y speakers
+	 * @return probability
+	 */
+	public double xyToY(double densityX, double densityY) {
+		return xyToYFromPower(Math.pow(densityX, volatility), Math.pow(densityY, volatility));
+	}
+
+	/*
+	 * Same rules for callers which already hold density^volatility, e.g. from a lookup table.
+	 */
+
+	public double xToXYFromPower(double yPowA) {
+		return clamp(cXtoXY * statusY * yPowA);
+	}
+
+	public double yToXYFromPower(double xPowA) {
+		return clamp(cYtoXY * statusX * xPowA);
+	}
+
+	public double xyToXFromPower(double xPowA) {
+		return clamp(cXYtoX * statusX * xPowA);
+	}
+
+	public double xyToYFromPower(double xPowA, double yPowA) {
+		return Math.min(1 - xyToXFromPower(xPowA), clamp(cXYtoY * statusY * yPowA));
+	}
+
+	private static double clamp(double probability) {
+		return probability < 0 ? 0 : (probability > 1 ? 1 : probability);
+	}
+
+}
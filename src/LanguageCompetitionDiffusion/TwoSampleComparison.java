@@ -0,0 +1,249 @@
+package LanguageCompetitionDiffusion;
+
+import java.util.Arrays;
+
+import cern.jet.stat.Probability;
+
+/**
+ * Equivalence test of one observable between a reference and a candidate sample, one
+ * value per run. The candidate is only declared equivalent if the data show it; a lack
+ * of evidence for a difference is not enough.
+ *
+ * - Means: two one-sided Welch t tests (TOST) of the mean difference against the
+ *   margin [-margin, margin]; equivalence requires both to reject at alpha.
+ * - Distributions: the Kolmogorov-Smirnov distance D between the empirical
+ *   distribution functions, with an upper confidence bound on the true distance from
+ *   the Dvoretzky-Kiefer-Wolfowitz inequality; equivalence requires the bound to be
+ *   below maxDistance.
+ *
+ * The outcome is EQUIVALENT if both conditions hold, DIFFERENT if a difference test
+ * (Welch or Kolmogorov-Smirnov) rejects at differenceAlpha and the estimated effect
+ * is outside the tolerance, and INCONCLUSIVE otherwise: the samples are too small to
+ * tell, more seeds are needed. Only EQUIVALENT passes.
+ *
+ * Effect sizes reported: the mean difference, Hedges' g and D.
+ */
+public class TwoSampleComparison {
+
+	public static final int EQUIVALENT = 0;
+	public static final int DIFFERENT = 1;
+	public static final int INCONCLUSIVE = 2;
+
+	/**
+	 * Outcome names, indexed by outcome.
+	 */
+	public static final String[] OUTCOME_NAMES = { "equivalent", "DIFFERENT", "INCONCLUSIVE" };
+
+	private final String observable;
+	private final double referenceMean;
+	private final double candidateMean;
+	private final double margin;
+	private final double tostPValue;
+	private final double welchPValue;
+	private final double hedgesG;
+	private final double ksStatistic;
+	private final double ksPValue;
+	private final double distanceBound;
+	private final int outcome;
+
+	/**
+	 * @param observable Name of the observable
+	 * @param reference Reference sample
+	 * @param candidate Candidate sample
+	 * @param margin Largest absolute mean difference considered equivalent
+	 * @param maxDistance Largest Kolmogorov-Smirnov distance considered equivalent, infinite to compare the means only
+	 * @param alpha Significance level of the equivalence tests
+	 * @param differenceAlpha Significance level of the difference tests, corrected for the number of comparisons
+	 */
+	public TwoSampleComparison(String observable, double[] reference, double[] candidate,
+			double margin, double maxDistance, double alpha, double differenceAlpha) {
+		if (reference.length < 2 || candidate.length < 2) {
+			throw new IllegalArgumentException("Both samples need at least two values.");
+		}
+		int n = reference.length;
+		int m = candidate.length;
+		this.observable = observable;
+		this.margin = margin;
+		this.referenceMean = mean(reference);
+		this.candidateMean = mean(candidate);
+		this.ksStatistic = ksStatistic(reference, candidate);
+		this.ksPValue = ksPValue(ksStatistic, n, m);
+		// each empirical distribution is within its DKW band with probability 1 - alpha / 2
+		this.distanceBound = Math.min(1, ksStatistic + dkwBand(n, alpha / 2) + dkwBand(m, alpha / 2));
+
+		double referenceVariance = variance(reference, referenceMean);
+		double candidateVariance = variance(candidate, candidateMean);
+		double difference = candidateMean - referenceMean;
+		double a = referenceVariance / n;
+		double b = candidateVariance / m;
+		double standardError = Math.sqrt(a + b);
+		if (standardError == 0) {
+			// both samples constant
+			this.welchPValue = (difference == 0) ? 1 : 0;
+			this.tostPValue = (Math.abs(difference) < margin) ? 0 : 1;
+			this.hedgesG = (difference == 0) ? 0 : Math.signum(difference) * Double.POSITIVE_INFINITY;
+		}
+		else {
+			double df = (a + b) * (a + b) / (a * a / (n - 1) + b * b / (m - 1));
+			this.welchPValue = 2 * Probability.studentT(df, -Math.abs(difference) / standardError);
+			// H0: difference <= -margin and H0: difference >= margin
+			double lowerP = 1 - Probability.studentT(df, (difference + margin) / standardError);
+			double upperP = Probability.studentT(df, (difference - margin) / standardError);
+			this.tostPValue = Math.max(lowerP, upperP);
+			double pooled = Math.sqrt(((n - 1) * referenceVariance + (m - 1) * candidateVariance) / (n + m - 2));
+			// small sample correction of Cohen's d
+			this.hedgesG = (1 - 3.0 / (4 * (n + m) - 9)) * difference / pooled;
+		}
+
+		boolean meanEquivalent = tostPValue < alpha;
+		boolean distributionEquivalent = distanceBound < maxDistance;
+		boolean meanDiffers = welchPValue < differenceAlpha && Math.abs(difference) >= margin;
+		boolean distributionDiffers = ksPValue < differenceAlpha && ksStatistic >= maxDistance;
+		if (meanEquivalent && distributionEquivalent) {
+			this.outcome = EQUIVALENT;
+		}
+		else if (meanDiffers || distributionDiffers) {
+			this.outcome = DIFFERENT;
+		}
+		else {
+			this.outcome = INCONCLUSIVE;
+		}
+	}
+
+	private static double mean(double[] sample) {
+		double sum = 0;
+		for (double value : sample) {
+			sum += value;
+		}
+		return sum / sample.length;
+	}
+
+	private static double variance(double[] sample, double mean) {
+		double sum = 0;
+		for (double value : sample) {
+			sum += (value - mean) * (value - mean);
+		}
+		return sum / (sample.length - 1);
+	}
+
+	/**
+	 * Half width of the Dvoretzky-Kiefer-Wolfowitz confidence band of an empirical
+	 * distribution function of n values.
+	 */
+	private static double dkwBand(int n, double alpha) {
+		return Math.sqrt(Math.log(2 / alpha) / (2.0 * n));
+	}
+
+	/**
+	 * Largest distance between the empirical distribution functions of both samples.
+	 */
+	private static double ksStatistic(double[] first, double[] second) {
+		double[] a = first.clone();
+		double[] b = second.clone();
+		Arrays.sort(a);
+		Arrays.sort(b);
+		int i = 0;
+		int j = 0;
+		double distance = 0;
+		while (i < a.length && j < b.length) {
+			// step over all copies of the smallest remaining value in both samples
+			double value = Math.min(a[i], b[j]);
+			while (i < a.length && a[i] == value) {
+				i++;
+			}
+			while (j < b.length && b[j] == value) {
+				j++;
+			}
+			distance = Math.max(distance, Math.abs((double) i / a.length - (double) j / b.length));
+		}
+		return distance;
+	}
+
+	/**
+	 * Asymptotic p-value of the Kolmogorov-Smirnov statistic, with the small sample
+	 * correction of Stephens.
+	 */
+	private static double ksPValue(double distance, int n, int m) {
+		double effective = Math.sqrt((double) n * m / (n + m));
+		double lambda = (effective + 0.12 + 0.11 / effective) * distance;
+		if (lambda < 0.2) {
+			return 1;
+		}
+		double sum = 0;
+		for (int k = 1; k <= 100; k++) {
+			double term = Math.exp(-2 * k * k * lambda * lambda);
+			sum += (k % 2 == 1) ? term : -term;
+			if (term < 1e-12) {
+				break;
+			}
+		}
+		return Math.max(0, Math.min(1, 2 * sum));
+	}
+
+	public String getObservable() {
+		return observable;
+	}
+
+	public double getReferenceMean() {
+		return referenceMean;
+	}
+
+	public double getCandidateMean() {
+		return candidateMean;
+	}
+
+	public double getMargin() {
+		return margin;
+	}
+
+	/**
+	 * @return p-value of the equivalence of the means (TOST), small is equivalent
+	 */
+	public double getTostPValue() {
+		return tostPValue;
+	}
+
+	/**
+	 * @return p-value of the difference of the means (Welch), small is different
+	 */
+	public double getWelchPValue() {
+		return welchPValue;
+	}
+
+	/**
+	 * @return standardized mean difference, candidate minus reference
+	 */
+	public double getHedgesG() {
+		return hedgesG;
+	}
+
+	/**
+	 * @return Kolmogorov-Smirnov statistic D, between 0 and 1
+	 */
+	public double getKsStatistic() {
+		return ksStatistic;
+	}
+
+	public double getKsPValue() {
+		return ksPValue;
+	}
+
+	/**
+	 * @return upper confidence bound of the distance between the true distributions
+	 */
+	public double getDistanceBound() {
+		return distanceBound;
+	}
+
+	/**
+	 * @return EQUIVALENT, DIFFERENT or INCONCLUSIVE
+	 */
+	public int getOutcome() {
+		return outcome;
+	}
+
+	public boolean isPassed() {
+		return outcome == EQUIVALENT;
+	}
+
+}